@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.terasology.world.generation.WorldFacet;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The result of a {@link FacetSafetyVerifier} run. Lists the verdict for every facet class.
+ */
+public final class FacetSafetyReport {
+
+    /**
+     * The verdict for a single facet class
+     */
+    public enum Verdict {
+
+        /**
+         * Identical results in all serial and concurrent runs
+         */
+        SAFE,
+
+        /**
+         * Concurrent runs produced different results or failed
+         */
+        UNSAFE,
+
+        /**
+         * Serial runs already produced different results - concurrency cannot be judged
+         */
+        NONDETERMINISTIC,
+
+        /**
+         * The facet could not be computed at all
+         */
+        FAILED
+    }
+
+    private final Map<Class<? extends WorldFacet>, Verdict> verdicts;
+
+    FacetSafetyReport(Map<Class<? extends WorldFacet>, Verdict> verdicts) {
+        this.verdicts = ImmutableMap.copyOf(verdicts);
+    }
+
+    /**
+     * @param facetClass the facet class
+     * @return the verdict or <code>null</code> if the facet was not verified
+     */
+    public Verdict getVerdict(Class<? extends WorldFacet> facetClass) {
+        return verdicts.get(facetClass);
+    }
+
+    /**
+     * @return all facet classes that were proven to be safe for concurrent computation
+     */
+    public Set<Class<? extends WorldFacet>> getSafeFacets() {
+        ImmutableSet.Builder<Class<? extends WorldFacet>> builder = ImmutableSet.builder();
+        for (Map.Entry<Class<? extends WorldFacet>, Verdict> entry : verdicts.entrySet()) {
+            if (entry.getValue() == Verdict.SAFE) {
+                builder.add(entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Facet safety report:");
+        for (Map.Entry<Class<? extends WorldFacet>, Verdict> entry : verdicts.entrySet()) {
+            sb.append(System.lineSeparator());
+            sb.append(String.format("  %-16s %s", entry.getValue(), entry.getKey().getName()));
+        }
+        return sb.toString();
+    }
+}
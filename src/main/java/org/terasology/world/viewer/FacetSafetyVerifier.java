@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.Region3i;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.viewer.FacetSafetyReport.Verdict;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Finds out which facets can be computed concurrently on the same region without locking.
+ * The same region is generated several times, first serially (to obtain a reference and
+ * to detect non-deterministic providers) and then concurrently by several threads that request
+ * all facets in different orders. The content of every facet is compared bit-for-bit
+ * through a reflective digest of its fields.
+ */
+public final class FacetSafetyVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacetSafetyVerifier.class);
+
+    /**
+     * Object graphs are not followed any deeper
+     */
+    private static final int MAX_DEPTH = 16;
+
+    private final int rounds;
+    private final int threads;
+    private final Random random = new Random(0);
+
+    /**
+     * @param rounds the number of serial and concurrent runs
+     * @param threads the number of threads in concurrent runs
+     */
+    public FacetSafetyVerifier(int rounds, int threads) {
+        this.rounds = rounds;
+        this.threads = threads;
+    }
+
+    /**
+     * Note: the facets of the given world are computed many times - this can take a while.
+     * @param world the world to test
+     * @param area the region to generate
+     * @param facetClasses the facets to verify
+     * @return the report for all facets
+     * @throws InterruptedException if the thread was interrupted while waiting for the concurrent runs
+     */
+    public FacetSafetyReport verify(World world, Region3i area, Collection<Class<? extends WorldFacet>> facetClasses)
+            throws InterruptedException {
+
+        Map<Class<? extends WorldFacet>, Verdict> verdicts = Maps.newLinkedHashMap();
+        List<Class<? extends WorldFacet>> facets = Lists.newArrayList(facetClasses);
+
+        Map<Class<? extends WorldFacet>, HashCode> reference = computeAll(world.getWorldData(area), facets);
+        for (Class<? extends WorldFacet> facet : facets) {
+            verdicts.put(facet, reference.containsKey(facet) ? Verdict.SAFE : Verdict.FAILED);
+        }
+
+        for (int i = 0; i < rounds; i++) {
+            Map<Class<? extends WorldFacet>, HashCode> serial = computeAll(world.getWorldData(area), shuffled(facets));
+            compare(reference, serial, verdicts, Verdict.NONDETERMINISTIC);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < rounds; i++) {
+                Region region = world.getWorldData(area);
+                CountDownLatch startSignal = new CountDownLatch(1);
+                List<Future<Map<Class<? extends WorldFacet>, HashCode>>> results = Lists.newArrayList();
+                for (int t = 0; t < threads; t++) {
+                    List<Class<? extends WorldFacet>> order = shuffled(facets);
+                    Callable<Map<Class<? extends WorldFacet>, HashCode>> run = () -> {
+                        startSignal.await();
+                        return computeAll(region, order);
+                    };
+                    results.add(executor.submit(run));
+                }
+                startSignal.countDown();
+
+                for (Future<Map<Class<? extends WorldFacet>, HashCode>> result : results) {
+                    try {
+                        compare(reference, result.get(), verdicts, Verdict.UNSAFE);
+                    } catch (ExecutionException e) {
+                        logger.warn("Concurrent run failed", e);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new FacetSafetyReport(verdicts);
+    }
+
+    private List<Class<? extends WorldFacet>> shuffled(List<Class<? extends WorldFacet>> facets) {
+        List<Class<? extends WorldFacet>> copy = Lists.newArrayList(facets);
+        Collections.shuffle(copy, random);
+        return copy;
+    }
+
+    /**
+     * Downgrades the verdict of all facets that are missing or different from the reference
+     */
+    private static void compare(Map<Class<? extends WorldFacet>, HashCode> reference, Map<Class<? extends WorldFacet>, HashCode> actual,
+            Map<Class<? extends WorldFacet>, Verdict> verdicts, Verdict failure) {
+        for (Map.Entry<Class<? extends WorldFacet>, HashCode> entry : reference.entrySet()) {
+            Class<? extends WorldFacet> facet = entry.getKey();
+            if (verdicts.get(facet) == Verdict.SAFE && !entry.getValue().equals(actual.get(facet))) {
+                verdicts.put(facet, failure);
+            }
+        }
+    }
+
+    /**
+     * @return the digests of all facets that could be computed
+     */
+    private static Map<Class<? extends WorldFacet>, HashCode> computeAll(Region region, List<Class<? extends WorldFacet>> facets) {
+        Map<Class<? extends WorldFacet>, HashCode> digests = Maps.newHashMap();
+        for (Class<? extends WorldFacet> facetClass : facets) {
+            try {
+                WorldFacet facet = region.getFacet(facetClass);
+                Hasher hasher = Hashing.sha256().newHasher();
+                digest(facet, hasher, new IdentityHashMap<>(), 0);
+                digests.put(facetClass, hasher.hash());
+            } catch (RuntimeException e) {
+                logger.debug("Could not compute facet {}", facetClass, e);
+            }
+        }
+        return digests;
+    }
+
+    private static void digest(Object obj, Hasher hasher, Map<Object, Integer> visited, int depth) {
+        if (obj == null) {
+            hasher.putByte((byte) 0);
+            return;
+        }
+
+        Class<?> clazz = obj.getClass();
+        if (obj instanceof Float) {
+            hasher.putFloat((Float) obj);
+        } else if (obj instanceof Double) {
+            hasher.putDouble((Double) obj);
+        } else if (obj instanceof Number) {
+            hasher.putLong(((Number) obj).longValue());
+        } else if (obj instanceof Boolean) {
+            hasher.putBoolean((Boolean) obj);
+        } else if (obj instanceof Character) {
+            hasher.putChar((Character) obj);
+        } else if (obj instanceof CharSequence || obj instanceof Enum || obj instanceof Class) {
+            hasher.putUnencodedChars(obj.toString());
+        } else if (depth >= MAX_DEPTH) {
+            hasher.putUnencodedChars(clazz.getName());
+        } else if (visited.containsKey(obj)) {
+            // back-reference - identified by the order of appearance
+            hasher.putInt(visited.get(obj));
+        } else {
+            visited.put(obj, visited.size());
+            if (obj instanceof float[]) {
+                // fast path for the most common facet data
+                float[] values = (float[]) obj;
+                hasher.putInt(values.length);
+                for (float value : values) {
+                    hasher.putFloat(value);
+                }
+            } else if (obj instanceof int[]) {
+                int[] values = (int[]) obj;
+                hasher.putInt(values.length);
+                for (int value : values) {
+                    hasher.putInt(value);
+                }
+            } else if (clazz.isArray()) {
+                int length = Array.getLength(obj);
+                hasher.putInt(length);
+                for (int i = 0; i < length; i++) {
+                    digest(Array.get(obj, i), hasher, visited, depth + 1);
+                }
+            } else if (obj instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                    digest(entry.getKey(), hasher, visited, depth + 1);
+                    digest(entry.getValue(), hasher, visited, depth + 1);
+                }
+            } else if (obj instanceof Iterable) {
+                for (Object element : (Iterable<?>) obj) {
+                    digest(element, hasher, visited, depth + 1);
+                }
+            } else {
+                digestFields(obj, hasher, visited, depth);
+            }
+        }
+    }
+
+    private static void digestFields(Object obj, Hasher hasher, Map<Object, Integer> visited, int depth) {
+        for (Class<?> clazz = obj.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    try {
+                        field.setAccessible(true);
+                        digest(field.get(obj), hasher, visited, depth + 1);
+                    } catch (ReflectiveOperationException | RuntimeException e) {
+                        hasher.putUnencodedChars(field.getName());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -18,14 +18,17 @@ package org.terasology.world.viewer;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 
@@ -34,17 +37,27 @@ import org.slf4j.LoggerFactory;
 import org.terasology.context.Context;
 import org.terasology.engine.Observer;
 import org.terasology.engine.module.ModuleManager;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.module.Module;
+import org.terasology.module.ModuleEnvironment;
 import org.terasology.registry.CoreRegistry;
+import org.terasology.world.chunks.ChunkConstants;
+import org.terasology.world.generation.World;
 import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.SurfaceHeightFacet;
 import org.terasology.world.generator.WorldGenerator;
 import org.terasology.world.viewer.config.Config;
 import org.terasology.world.viewer.core.ConfigPanel;
 import org.terasology.world.viewer.core.FacetPanel;
+import org.terasology.world.viewer.core.ShadedReliefLayer;
+import org.terasology.world.viewer.core.StageMetrics;
 import org.terasology.world.viewer.core.Viewer;
 import org.terasology.world.viewer.layers.FacetLayer;
 import org.terasology.world.viewer.layers.FacetLayers;
 import org.terasology.world.viewer.camera.Camera;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 
 /**
@@ -58,6 +71,8 @@ public class MainFrame extends JFrame {
 
     private static final int MAX_TILES = 3000;
 
+    private static final int VERIFICATION_ROUNDS = 3;
+
     private final Config config;
     private final Timer statusBarTimer;
 
@@ -65,6 +80,7 @@ public class MainFrame extends JFrame {
      * A thread-safe list (required for parallel tile rendering)
      */
     private List<FacetLayer> layerList;
+    private ProviderGraph providerGraph;
 
     private final Viewer viewer;
     private final FacetPanel layerPanel;
@@ -86,6 +102,7 @@ public class MainFrame extends JFrame {
             @Override
             public void update(WorldGenerator wg) {
                 if (wg != oldWorldGen) {
+                    // the new generator is initialized already
                     config.storeLayers(oldWorldGen.getUri(), layerList);
                     reload(wg);
                     oldWorldGen = wg;
@@ -99,7 +116,12 @@ public class MainFrame extends JFrame {
 
         reload(worldGen);
 
-        configPanel.addObserver(wg -> viewer.invalidateWorld());
+        configPanel.addPropertyObserver(comp -> {
+            // only the facets that depend on the changed component are recomputed
+            Set<Class<? extends WorldFacet>> affected = providerGraph.getAffectedFacets(comp.getClass());
+            logger.debug("{} affects {}", comp.getClass().getSimpleName(), affected != null ? affected : "all facets");
+            viewer.invalidateWorld(affected);
+        });
 
         add(layerPanel, BorderLayout.EAST);
         add(configPanel, BorderLayout.WEST);
@@ -109,7 +131,7 @@ public class MainFrame extends JFrame {
         JLabel cameraLabel = new JLabel();
         cameraLabel.setPreferredSize(new Dimension(170, 0));
         JLabel tileCountLabel = new JLabel();
-        tileCountLabel.setPreferredSize(new Dimension(220, 0));
+        tileCountLabel.setPreferredSize(new Dimension(240, 0));
         JLabel memoryLabel = new JLabel();
         memoryLabel.setPreferredSize(new Dimension(140, 0));
         statusBarTimer = new Timer(50, event -> {
@@ -119,9 +141,17 @@ public class MainFrame extends JFrame {
             int zoom = (int) (camera.getZoom() * 100);
             cameraLabel.setText(String.format("Camera: %d/%d at %d%%", camX, camZ, zoom));
 
-            int pendingTiles = viewer.getPendingTiles();
             int cachedTiles = viewer.getCachedTiles();
-            tileCountLabel.setText(String.format("Tiles: %d/%d cached, %d queued", cachedTiles, MAX_TILES, pendingTiles));
+            List<StageMetrics> stages = viewer.getStageMetrics();
+            StageMetrics regions = stages.get(0);
+            StageMetrics rasters = stages.get(1);
+            // the caches are limited by bytes, not by the number of tiles
+            long cachedMB = viewer.getTileCacheBytes() >> 20;
+            long budgetMB = viewer.getTileCacheBudget() >> 20;
+            tileCountLabel.setText(String.format("Tiles: %d cached (%d/%d MB), %d+%d queued",
+                    cachedTiles, cachedMB, budgetMB, regions.getQueued(), rasters.getQueued()));
+            tileCountLabel.setToolTipText("<html>" + Joiner.on("<br>").join(stages)
+                    + "<br>Region workers: " + viewer.getPoolStatus() + "</html>");
 
             Runtime runtime = Runtime.getRuntime();
             long maxMem = runtime.maxMemory();
@@ -130,6 +160,7 @@ public class MainFrame extends JFrame {
             long allocMemory = totalMemory - freeMem;
             long oneMeg = 1024 * 1024;
             memoryLabel.setText(String.format("Memory: %d/%d MB", allocMemory / oneMeg, maxMem / oneMeg));
+            memoryLabel.setToolTipText("<html>" + Joiner.on("<br>").join(viewer.getMemoryStatus()) + "</html>");
         });
         statusBarTimer.setInitialDelay(0);
         statusBarTimer.start();
@@ -152,9 +183,17 @@ public class MainFrame extends JFrame {
         Set<Class<? extends WorldFacet>> facets = worldGen.getWorld().getAllFacets();
 
         ModuleManager moduleManager = CoreRegistry.get(ModuleManager.class);
+        providerGraph = new ProviderGraph(moduleManager.getEnvironment());
 
         // Create with default values first
         List<FacetLayer> loadedLayers = FacetLayers.createLayersFor(facets, moduleManager.getEnvironment());
+        if (facets.contains(SurfaceHeightFacet.class)) {
+            // the relief needs the halo of the viewer, so it is not part of the layer library
+            loadedLayers = Lists.newArrayList(loadedLayers);
+            FacetLayer relief = new ShadedReliefLayer();
+            relief.setVisible(false);
+            loadedLayers.add(relief);
+        }
 
         // Then try to replace them with those from the config file
         try {
@@ -166,11 +205,65 @@ public class MainFrame extends JFrame {
         // assign to thread-safe implementation
         layerList = Lists.newCopyOnWriteArrayList(loadedLayers);
 
+        String modules = getModuleFingerprint(moduleManager.getEnvironment());
+        Set<Class<? extends WorldFacet>> safeFacets = config.loadSafeFacets(worldGen.getUri(), modules);
+        viewer.setLockFreeFacets(safeFacets != null ? safeFacets : Collections.<Class<? extends WorldFacet>>emptySet());
+
         viewer.setWorldGen(worldGen, layerList);
 
+        if (safeFacets == null && config.getViewConfig().isVerifyFacets()) {
+            verifyFacets(worldGen, facets, modules);
+        }
+
         layerPanel.setLayers(layerList);
     }
 
+    /**
+     * Runs the {@link FacetSafetyVerifier} in the background and stores the result in the config.
+     */
+    private void verifyFacets(WorldGenerator worldGen, Set<Class<? extends WorldFacet>> facets, String modules) {
+        World world = worldGen.getWorld();
+        SwingWorker<FacetSafetyReport, Void> worker = new SwingWorker<FacetSafetyReport, Void>() {
+
+            @Override
+            protected FacetSafetyReport doInBackground() throws InterruptedException {
+                Vector3i size = new Vector3i(ChunkConstants.SIZE_X * 4, ChunkConstants.SIZE_Y * 4, ChunkConstants.SIZE_Z * 4);
+                Region3i area = Region3i.createFromMinAndSize(new Vector3i(0, 0, 0), size);
+                int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+                return new FacetSafetyVerifier(VERIFICATION_ROUNDS, threads).verify(world, area, facets);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    FacetSafetyReport report = get();
+                    logger.info("{}", report);
+                    config.storeSafeFacets(worldGen.getUri(), modules, report.getSafeFacets());
+                    if (configPanel.getWorldGen() == worldGen) {
+                        viewer.setLockFreeFacets(report.getSafeFacets());
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.warn("Could not verify facets of {}", worldGen.getUri(), e);
+                }
+            }
+        };
+        logger.info("Verifying thread-safety of facets for {}", modules);
+        worker.execute();
+    }
+
+    /**
+     * @param env the module environment
+     * @return a string that identifies all modules and their versions
+     */
+    private static String getModuleFingerprint(ModuleEnvironment env) {
+        List<String> ids = Lists.newArrayList();
+        for (Module module : env) {
+            ids.add(module.getId() + ":" + module.getVersion());
+        }
+        Collections.sort(ids);
+        return Joiner.on(',').join(ids);
+    }
+
     @Override
     public void dispose() {
         super.dispose();
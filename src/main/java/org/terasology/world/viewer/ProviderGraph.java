@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer;
+
+import java.lang.reflect.Field;
+import java.util.Deque;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.entitySystem.Component;
+import org.terasology.module.ModuleEnvironment;
+import org.terasology.world.generation.Facet;
+import org.terasology.world.generation.FacetProvider;
+import org.terasology.world.generation.Produces;
+import org.terasology.world.generation.Requires;
+import org.terasology.world.generation.Updates;
+import org.terasology.world.generation.WorldFacet;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+/**
+ * The dependencies between all facet providers of a module environment, derived from their
+ * {@link Produces}, {@link Updates} and {@link Requires} annotations. A configuration component
+ * is assigned to every provider that declares a field of the component type.
+ * The graph covers all providers of the environment, so the affected facets are a superset
+ * of those that actually change in a particular world.
+ */
+public final class ProviderGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderGraph.class);
+
+    /**
+     * Maps every facet to the providers that require or update it
+     */
+    private final SetMultimap<Class<? extends WorldFacet>, Class<?>> consumers = HashMultimap.create();
+
+    /**
+     * Maps every provider to the facets that it produces or updates
+     */
+    private final SetMultimap<Class<?>, Class<? extends WorldFacet>> outputs = HashMultimap.create();
+
+    private final Set<Class<?>> providers = Sets.newHashSet();
+
+    /**
+     * @param environment the environment that contains the facet providers
+     */
+    public ProviderGraph(ModuleEnvironment environment) {
+        for (Class<? extends FacetProvider> provider : environment.getSubtypesOf(FacetProvider.class)) {
+            addProvider(provider);
+        }
+        logger.debug("Found {} facet providers", providers.size());
+    }
+
+    private void addProvider(Class<?> provider) {
+        providers.add(provider);
+
+        Produces produces = provider.getAnnotation(Produces.class);
+        if (produces != null) {
+            for (Class<? extends WorldFacet> facet : produces.value()) {
+                outputs.put(provider, facet);
+            }
+        }
+
+        Updates updates = provider.getAnnotation(Updates.class);
+        if (updates != null) {
+            for (Facet facet : updates.value()) {
+                outputs.put(provider, facet.value());
+                consumers.put(facet.value(), provider);
+            }
+        }
+
+        Requires requires = provider.getAnnotation(Requires.class);
+        if (requires != null) {
+            for (Facet facet : requires.value()) {
+                consumers.put(facet.value(), provider);
+            }
+        }
+    }
+
+    /**
+     * @param configType the type of the configuration component that has changed
+     * @return all facets that depend on the configuration or <code>null</code> if no provider uses it
+     */
+    public Set<Class<? extends WorldFacet>> getAffectedFacets(Class<? extends Component> configType) {
+        Deque<Class<?>> pending = Lists.newLinkedList();
+        for (Class<?> provider : providers) {
+            if (isConfiguredBy(provider, configType)) {
+                pending.add(provider);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        // all facets that are derived from the output of an affected provider are affected as well
+        Set<Class<?>> visited = Sets.newHashSet();
+        Set<Class<? extends WorldFacet>> affected = Sets.newHashSet();
+        while (!pending.isEmpty()) {
+            Class<?> provider = pending.removeFirst();
+            if (visited.add(provider)) {
+                for (Class<? extends WorldFacet> facet : outputs.get(provider)) {
+                    if (affected.add(facet)) {
+                        pending.addAll(consumers.get(facet));
+                    }
+                }
+            }
+        }
+        return ImmutableSet.copyOf(affected);
+    }
+
+    private static boolean isConfiguredBy(Class<?> provider, Class<? extends Component> configType) {
+        for (Class<?> clazz = provider; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                Class<?> type = field.getType();
+                if (Component.class.isAssignableFrom(type) && type.isAssignableFrom(configType)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -16,29 +16,148 @@
 
 package org.terasology.world.viewer;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 import org.terasology.math.Region3i;
 import org.terasology.world.generation.Region;
 import org.terasology.world.generation.WorldFacet;
 
+import com.google.common.util.concurrent.Futures;
+
 /**
- * A thread-safe wrapping class for {@link Region} that
- * synchronizes access to {@link #getFacet(Class)}. It assumes that
- * {@link #getRegion()} does not need synchronizing.
+ * A thread-safe wrapping class for {@link Region} that computes every
+ * facet exactly once. Threads that request a facet that is being computed
+ * wait for the result, so a partly composed facet can never be observed.
+ * Access to facets that are computed already is lock-free.
+ * It assumes that {@link #getRegion()} does not need synchronizing.
+ * It also records which facets have been computed already.
  */
 public class ThreadSafeRegion implements Region {
 
     private final Region base;
 
+    /**
+     * The underlying region is not thread-safe - only one facet can be computed at a time.
+     */
+    private final Object computeLock = new Object();
+
+    private final ConcurrentMap<Class<? extends WorldFacet>, Future<WorldFacet>> facets = new ConcurrentHashMap<>();
+
+    /**
+     * Facets that were proven to be safe for concurrent computation (see {@link FacetSafetyVerifier})
+     */
+    private final Set<Class<? extends WorldFacet>> lockFreeFacets;
+
     /**
      * @param base the underlying original region this implementation uses
      */
     public ThreadSafeRegion(Region base) {
+        this(base, Collections.<Class<? extends WorldFacet>>emptySet());
+    }
+
+    /**
+     * @param base the underlying original region this implementation uses
+     * @param lockFreeFacets facets that can be computed without holding the region lock
+     */
+    public ThreadSafeRegion(Region base, Set<Class<? extends WorldFacet>> lockFreeFacets) {
         this.base = base;
+        this.lockFreeFacets = lockFreeFacets;
     }
 
+    /**
+     * @throws com.google.common.util.concurrent.UncheckedExecutionException if the facet could not be computed
+     */
     @Override
-    public synchronized <T extends WorldFacet> T getFacet(Class<T> dataType) {
-        return base.getFacet(dataType);
+    public <T extends WorldFacet> T getFacet(Class<T> dataType) {
+        Future<WorldFacet> future = facets.get(dataType);
+        if (future == null) {
+            FutureTask<WorldFacet> task = new FutureTask<>(() -> compute(dataType));
+            future = facets.putIfAbsent(dataType, task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+        return dataType.cast(Futures.getUnchecked(future));
+    }
+
+    private WorldFacet compute(Class<? extends WorldFacet> dataType) {
+        if (lockFreeFacets.contains(dataType)) {
+            // FacetSafetyVerifier has tested concurrent requests for these facets on a shared region
+            return base.getFacet(dataType);
+        }
+        synchronized (computeLock) {
+            return base.getFacet(dataType);
+        }
+    }
+
+    /**
+     * A facet that could not be computed is forgotten, so that the next request computes it again.
+     * @param dataType the facet class
+     * @return true if the facet has been computed successfully already
+     */
+    public boolean hasFacet(Class<? extends WorldFacet> dataType) {
+        Future<WorldFacet> future = facets.get(dataType);
+        if (future == null || !future.isDone()) {
+            return false;
+        }
+        try {
+            Futures.getDone(future);
+            return true;
+        } catch (ExecutionException | CancellationException e) {
+            facets.remove(dataType, future);
+            return false;
+        }
+    }
+
+    /**
+     * @param dataTypes a collection of facet classes
+     * @return true if all facets have been computed already
+     */
+    public boolean hasFacets(Collection<Class<? extends WorldFacet>> dataTypes) {
+        for (Class<? extends WorldFacet> dataType : dataTypes) {
+            if (!hasFacet(dataType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies all successfully computed facets of another region that covers the same area.
+     * The copies are only known to this wrapper - the underlying region has no way to accept them,
+     * so it generates them again if they are required by a facet that is computed later.
+     * Must be called before the region is shared with other threads.
+     * @param source the region to copy from
+     * @param excluded facets that must be computed again
+     */
+    public void reuseFacets(ThreadSafeRegion source, Set<Class<? extends WorldFacet>> excluded) {
+        for (Map.Entry<Class<? extends WorldFacet>, Future<WorldFacet>> entry : source.facets.entrySet()) {
+            Future<WorldFacet> future = entry.getValue();
+            if (!excluded.contains(entry.getKey()) && future.isDone()) {
+                try {
+                    facets.putIfAbsent(entry.getKey(), Futures.immediateFuture(Futures.getDone(future)));
+                } catch (ExecutionException | CancellationException e) {
+                    // failed facets are computed again
+                }
+            }
+        }
+    }
+
+    /**
+     * @return an unmodifiable view on the facets that have been requested so far
+     */
+    public Set<Class<? extends WorldFacet>> getFacets() {
+        return Collections.unmodifiableSet(facets.keySet());
     }
 
     @Override
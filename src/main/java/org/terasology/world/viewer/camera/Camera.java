@@ -26,25 +26,36 @@ import org.terasology.math.geom.Vector2f;
 import com.google.common.collect.Lists;
 
 /**
- * Defines a simple camera
+ * Defines a simple camera. The state can be read from any thread (e.g. by tile workers),
+ * the listeners are notified outside of the lock.
  */
 public class Camera {
     private final Vector2f pos = new Vector2f();
     private final Collection<CameraListener> listeners = Lists.newLinkedList();
     private float zoom = 1.0f;
 
-    public float getZoom() {
+    /**
+     * The last result of {@link #getVisibleArea(int, int)} - it is reused until the camera or the window changes
+     */
+    private Rect2i visibleArea;
+    private int visibleWidth;
+    private int visibleHeight;
+
+    public synchronized float getZoom() {
         return zoom;
     }
 
     public void setZoom(float zoom) {
-        this.zoom = zoom;
+        synchronized (this) {
+            this.zoom = zoom;
+            visibleArea = null;
+        }
         for (CameraListener listener : listeners) {
             listener.onZoomChange();
         }
     }
 
-    public ImmutableVector2f getPos() {
+    public synchronized ImmutableVector2f getPos() {
         return new ImmutableVector2f(pos.x, pos.y);
     }
 
@@ -53,8 +64,11 @@ public class Camera {
      * @param dy the y translation
      */
     public void translate(float dx, float dy) {
-        this.pos.addX(dx / zoom);
-        this.pos.addY(dy / zoom);
+        synchronized (this) {
+            this.pos.addX(dx / zoom);
+            this.pos.addY(dy / zoom);
+            visibleArea = null;
+        }
         for (CameraListener listener : listeners) {
             listener.onPosChange();
         }
@@ -71,9 +85,13 @@ public class Camera {
     /**
      * @param width the width of the window
      * @param height the height of the window
-     * @return the window that is currently visible by the camera
+     * @return the window that is currently visible by the camera (the same instance until the camera moves)
      */
-    public Rect2i getVisibleArea(int width, int height) {
+    public synchronized Rect2i getVisibleArea(int width, int height) {
+        if (visibleArea != null && width == visibleWidth && height == visibleHeight) {
+            return visibleArea;
+        }
+
         int cx = TeraMath.floorToInt(pos.getX());
         int cy = TeraMath.floorToInt(pos.getY());
 
@@ -82,7 +100,9 @@ public class Camera {
         int h = (int) (height / getZoom()) + 2;
         int minX = cx - w / 2;
         int minY = cy - h / 2;
-        Rect2i visWorld = Rect2i.createFromMinAndSize(minX, minY, w, h);
-        return visWorld;
+        visibleArea = Rect2i.createFromMinAndSize(minX, minY, w, h);
+        visibleWidth = width;
+        visibleHeight = height;
+        return visibleArea;
     }
 }
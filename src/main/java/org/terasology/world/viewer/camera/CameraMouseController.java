@@ -43,9 +43,9 @@ public class CameraMouseController extends MouseAdapter {
     private int zoomLevel;
 
     /**
-     * 2^(-8 * 0.25) =   25%
+     * 2^(-12 * 0.25) = 12.5%
      */
-    private int minZoomLevel = -8;
+    private int minZoomLevel = -12;
 
     /**
      * 2^(20 * 0.25) = 3200%
@@ -24,6 +24,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,11 +33,13 @@ import org.terasology.engine.TerasologyConstants;
 import org.terasology.naming.Version;
 import org.terasology.naming.gson.VersionTypeAdapter;
 import org.terasology.utilities.gson.UriTypeAdapterFactory;
+import org.terasology.world.generation.WorldFacet;
 import org.terasology.world.viewer.layers.FacetLayer;
 import org.terasology.world.viewer.layers.FacetLayerConfig;
 import org.terasology.world.viewer.version.VersionInfo;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -95,6 +98,34 @@ public class Config {
         }
     }
 
+    /**
+     * @param wgUri the world generator
+     * @param modules identifies the module versions that were verified
+     * @param safeFacets the facets that were proven to be safe for concurrent computation
+     */
+    public void storeSafeFacets(SimpleUri wgUri, String modules, Set<Class<? extends WorldFacet>> safeFacets) {
+        WorldGenConfigData wgConfig = data.worldGenConfigs.get(wgUri);
+        if (wgConfig == null) {
+            wgConfig = new WorldGenConfigData();
+            data.worldGenConfigs.put(wgUri, wgConfig);
+        }
+        wgConfig.verifiedModules = modules;
+        wgConfig.safeFacets = Lists.newArrayList(safeFacets);
+    }
+
+    /**
+     * @param wgUri the world generator
+     * @param modules identifies the current module versions
+     * @return the facets that were proven to be safe or <code>null</code> if these modules have not been verified
+     */
+    public Set<Class<? extends WorldFacet>> loadSafeFacets(SimpleUri wgUri, String modules) {
+        WorldGenConfigData wgData = data.worldGenConfigs.get(wgUri);
+        if (wgData == null || wgData.safeFacets == null || !modules.equals(wgData.verifiedModules)) {
+            return null;
+        }
+        return Sets.newHashSet(wgData.safeFacets);
+    }
+
     public List<FacetLayer> loadLayers(SimpleUri wgUri, List<FacetLayer> defaultFacets) {
         List<FacetLayer> confLayers = Lists.newArrayList();
         List<FacetLayer> defLayers = Lists.newArrayList(defaultFacets);
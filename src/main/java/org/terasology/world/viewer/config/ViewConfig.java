@@ -25,6 +25,18 @@ public class ViewConfig {
 
     private Vector2i camPos = new Vector2i(0, 0);
     private float zoomFactor = 1f;
+    private int prefetchRing = 2;
+    private boolean markStaleTiles = true;
+    private PoolMode poolMode = PoolMode.THROUGHPUT;
+    private int minWorkers = 1;
+    private int maxWorkers;
+    private boolean verifyFacets;
+    private int regionCacheMB;
+    private int rasterCacheMB;
+    private int imageCacheMB;
+    private int packedCacheMB;
+    private int offHeapTiles;
+    private boolean mappedTiles;
 
     public Vector2i getCamPos() {
         return camPos;
@@ -41,4 +53,138 @@ public class ViewConfig {
     public void setZoomFactor(float zoomFactor) {
         this.zoomFactor = zoomFactor;
     }
+
+    /**
+     * @return the width of the ring of tiles around the visible area that is loaded when idle
+     */
+    public int getPrefetchRing() {
+        return prefetchRing;
+    }
+
+    public void setPrefetchRing(int prefetchRing) {
+        this.prefetchRing = prefetchRing;
+    }
+
+    /**
+     * @return true if outdated tiles should be darkened until they are re-rendered
+     */
+    public boolean isMarkStaleTiles() {
+        return markStaleTiles;
+    }
+
+    public void setMarkStaleTiles(boolean markStaleTiles) {
+        this.markStaleTiles = markStaleTiles;
+    }
+
+    /**
+     * @return the goal of the worker pool tuning
+     */
+    public PoolMode getPoolMode() {
+        return poolMode;
+    }
+
+    public void setPoolMode(PoolMode poolMode) {
+        this.poolMode = poolMode;
+    }
+
+    /**
+     * @return the minimum number of region worker threads
+     */
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    public void setMinWorkers(int minWorkers) {
+        this.minWorkers = minWorkers;
+    }
+
+    /**
+     * @return the maximum number of region worker threads or 0 to use twice the number of processors
+     */
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    /**
+     * @return true if the thread-safety of facets should be verified for unknown module versions
+     */
+    public boolean isVerifyFacets() {
+        return verifyFacets;
+    }
+
+    public void setVerifyFacets(boolean verifyFacets) {
+        this.verifyFacets = verifyFacets;
+    }
+
+    /**
+     * @return the memory budget of generated regions in MB or 0 to derive it from the max. heap size
+     */
+    public int getRegionCacheMB() {
+        return regionCacheMB;
+    }
+
+    public void setRegionCacheMB(int regionCacheMB) {
+        this.regionCacheMB = regionCacheMB;
+    }
+
+    /**
+     * @return the memory budget of layer rasters in MB or 0 to derive it from the max. heap size
+     */
+    public int getRasterCacheMB() {
+        return rasterCacheMB;
+    }
+
+    public void setRasterCacheMB(int rasterCacheMB) {
+        this.rasterCacheMB = rasterCacheMB;
+    }
+
+    /**
+     * @return the memory budget of composed tile images in MB or 0 to derive it from the max. heap size
+     */
+    public int getImageCacheMB() {
+        return imageCacheMB;
+    }
+
+    public void setImageCacheMB(int imageCacheMB) {
+        this.imageCacheMB = imageCacheMB;
+    }
+
+    /**
+     * @return the memory budget of packed (palette-indexed or compressed) tile images in MB
+     * or 0 to derive it from the max. heap size
+     */
+    public int getPackedCacheMB() {
+        return packedCacheMB;
+    }
+
+    public void setPackedCacheMB(int packedCacheMB) {
+        this.packedCacheMB = packedCacheMB;
+    }
+
+    /**
+     * @return the number of tile images that are kept outside of the heap once they are evicted
+     * from the image cache or 0 to disable the off-heap store
+     */
+    public int getOffHeapTiles() {
+        return offHeapTiles;
+    }
+
+    public void setOffHeapTiles(int offHeapTiles) {
+        this.offHeapTiles = offHeapTiles;
+    }
+
+    /**
+     * @return true if the off-heap tiles are stored in a memory-mapped temporary file rather than in direct buffers
+     */
+    public boolean isMappedTiles() {
+        return mappedTiles;
+    }
+
+    public void setMappedTiles(boolean mappedTiles) {
+        this.mappedTiles = mappedTiles;
+    }
 }
@@ -18,10 +18,19 @@ package org.terasology.world.viewer.config;
 
 import java.util.List;
 
+import org.terasology.world.generation.WorldFacet;
+
 import com.google.common.collect.Lists;
 
 /**
  */
 public class WorldGenConfigData {
     List<ConfigEntry> layers = Lists.newArrayList();
+
+    /**
+     * Identifies the module versions that {@link #safeFacets} was verified for
+     */
+    String verifiedModules;
+
+    List<Class<? extends WorldFacet>> safeFacets;
 }
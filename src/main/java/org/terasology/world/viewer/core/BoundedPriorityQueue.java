@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A blocking priority queue with a fixed capacity. The elements are kept in a sorted tree,
+ * so both the head and the element with the lowest priority are found in O(log n).
+ * If the queue is full, an insertion never blocks or fails - instead, the element with the
+ * lowest priority (possibly the new one) is removed and passed to the overflow handler.
+ * The comparator must define a total order (no two elements compare equal) and the order
+ * of an element must not change while it is queued.
+ * @param <E> the element type
+ */
+final class BoundedPriorityQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final int capacity;
+    private final TreeSet<E> elements;
+    private final Consumer<? super E> overflowHandler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * @param capacity the maximum number of elements
+     * @param comparator the order of the elements (the smallest is taken first)
+     * @param overflowHandler is called for every element that is dropped, outside of the lock
+     */
+    BoundedPriorityQueue(int capacity, Comparator<? super E> comparator, Consumer<? super E> overflowHandler) {
+        this.capacity = capacity;
+        this.elements = new TreeSet<>(comparator);
+        this.overflowHandler = overflowHandler;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        E dropped = null;
+        lock.lock();
+        try {
+            elements.add(e);
+            if (elements.size() > capacity) {
+                dropped = elements.pollLast();
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (dropped != null) {
+            overflowHandler.accept(dropped);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public void put(E e) {
+        offer(e);
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return elements.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (elements.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return elements.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (elements.isEmpty()) {
+                notEmpty.await();
+            }
+            return elements.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            return elements.isEmpty() ? null : elements.first();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            return elements.remove(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        lock.lock();
+        try {
+            return elements.contains(o);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return elements.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return always {@link Integer#MAX_VALUE}, since insertions never fail
+     */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        lock.lock();
+        try {
+            int count = 0;
+            while (count < maxElements && !elements.isEmpty()) {
+                c.add(elements.pollFirst());
+                count++;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return an iterator over a snapshot of the elements (in priority order)
+     */
+    @Override
+    public Iterator<E> iterator() {
+        lock.lock();
+        try {
+            return new ArrayList<>(elements).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.terasology.entitySystem.Component;
+import org.terasology.world.generator.WorldConfigurator;
+import org.terasology.world.generator.WorldGenerator;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+
+/**
+ * Identifies the state of a world generator: its URI, the seed and all configurator properties.
+ * Two generators with equal fingerprints create the same world.
+ */
+final class ConfigFingerprint {
+
+    private static final Gson GSON = new Gson();
+
+    private final HashCode hash;
+
+    private ConfigFingerprint(HashCode hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * @param worldGen the world generator
+     * @return the fingerprint of the current configuration
+     */
+    public static ConfigFingerprint of(WorldGenerator worldGen) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(worldGen.getUri().toString(), StandardCharsets.UTF_8);
+        hasher.putString(String.valueOf(worldGen.getWorldSeed()), StandardCharsets.UTF_8);
+
+        WorldConfigurator configurator = worldGen.getConfigurator();
+        if (configurator != null) {
+            // sorted, so that the order of the properties is irrelevant
+            Map<String, Component> props = ImmutableSortedMap.copyOf(configurator.getProperties());
+            for (Map.Entry<String, Component> entry : props.entrySet()) {
+                hasher.putString(entry.getKey(), StandardCharsets.UTF_8);
+                hasher.putString(GSON.toJson(entry.getValue()), StandardCharsets.UTF_8);
+            }
+        }
+        return new ConfigFingerprint(hasher.hash());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConfigFingerprint)) {
+            return false;
+        }
+        return hash.equals(((ConfigFingerprint) obj).hash);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigFingerprint [" + hash.toString().substring(0, 8) + "]";
+    }
+}
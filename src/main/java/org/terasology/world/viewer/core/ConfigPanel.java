@@ -23,12 +23,17 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.GridLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -39,7 +44,9 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
+import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.MatteBorder;
 
@@ -56,6 +63,7 @@ import org.terasology.world.generator.internal.WorldGeneratorManager;
 import org.terasology.world.viewer.SelectWorldGenDialog;
 import org.terasology.world.viewer.config.Config;
 import org.terasology.world.viewer.config.WorldConfig;
+import org.terasology.world.viewer.gui.ChangeThrottle;
 import org.terasology.world.viewer.gui.UIBindings;
 
 import com.google.common.collect.Lists;
@@ -69,7 +77,18 @@ public class ConfigPanel extends JPanel {
 
     private static final Logger logger = LoggerFactory.getLogger(ConfigPanel.class);
 
+    /**
+     * The minimum time between two notifications of the same spinner
+     */
+    private static final int SPINNER_INTERVAL_MILLIS = 150;
+
+    /**
+     * Changes of the same field within this time are merged into a single undo step
+     */
+    private static final int MERGE_EDITS_MILLIS = 1000;
+
     private final List<Observer<WorldGenerator>> observers = Lists.newArrayList();
+    private final List<Observer<Component>> propertyObservers = Lists.newArrayList();
 
     private Context context;
     private Config config;
@@ -82,6 +101,18 @@ public class ConfigPanel extends JPanel {
 
     private JPanel configPanel;
 
+    private final JButton changeButton = new JButton("Change World Generator");
+    private final JButton undoButton = new JButton("Undo");
+    private final JButton redoButton = new JButton("Redo");
+
+    private final Deque<PropertyEdit> undoStack = Lists.newLinkedList();
+    private final Deque<PropertyEdit> redoStack = Lists.newLinkedList();
+
+    /**
+     * The throttles of the current controls - pending changes must not outlive them
+     */
+    private final List<ChangeThrottle> throttles = Lists.newArrayList();
+
     public ConfigPanel(Context context, Config config) {
 
         setLayout(new BorderLayout());
@@ -93,7 +124,13 @@ public class ConfigPanel extends JPanel {
         JPanel wgSelectPanel = new JPanel(new GridBagLayout());
         wgSelectPanel.setBorder(BorderFactory.createTitledBorder("World Generator"));
 
-        reloadWorldGen(config.getWorldConfig());
+        // the initial generator is required right away
+        WorldConfig wgConfig = config.getWorldConfig();
+        try {
+            applyWorldGen(wgConfig, createWorldGen(wgConfig));
+        } catch (Exception ex) {
+            showError(wgConfig.getWorldGen(), ex);
+        }
 
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(5, 5, 5, 5);
@@ -109,13 +146,29 @@ public class ConfigPanel extends JPanel {
         wgSelectPanel.add(seaLevelLabel, gbc.clone());
         add(wgSelectPanel, BorderLayout.NORTH);
 
-        JButton button = new JButton("Change World Generator");
-        button.addActionListener(this::editWorldGen);
-        add(button, BorderLayout.SOUTH);
+        undoButton.addActionListener(e -> undo());
+        redoButton.addActionListener(e -> redo());
+        undoButton.setToolTipText("Restore the previous value (Ctrl+Z)");
+        redoButton.setToolTipText("Apply the undone value again (Ctrl+Y)");
+        // only while a control of this panel has the focus - text fields elsewhere keep their keys
+        registerKeyboardAction(e -> undo(), KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
+        registerKeyboardAction(e -> redo(), KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
+        updateUndoButtons();
+
+        JPanel undoPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        undoPanel.add(undoButton);
+        undoPanel.add(redoButton);
+
+        JPanel buttonPanel = new JPanel(new BorderLayout(0, 5));
+        buttonPanel.add(undoPanel, BorderLayout.NORTH);
+        buttonPanel.add(changeButton, BorderLayout.SOUTH);
+
+        changeButton.addActionListener(this::editWorldGen);
+        add(buttonPanel, BorderLayout.SOUTH);
     }
 
     /**
-     * Adds an observer
+     * Adds an observer that is notified whenever a different world generator was selected
      * @param obs the observer to add
      */
     public void addObserver(Observer<WorldGenerator> obs) {
@@ -126,6 +179,18 @@ public class ConfigPanel extends JPanel {
         observers.remove(obs);
     }
 
+    /**
+     * Adds an observer that is notified with the new component whenever a configurator property has changed
+     * @param obs the observer to add
+     */
+    public void addPropertyObserver(Observer<Component> obs) {
+        propertyObservers.add(obs);
+    }
+
+    public void removePropertyObserver(Observer<Component> obs) {
+        propertyObservers.remove(obs);
+    }
+
     private void editWorldGen(ActionEvent event) {
         WorldConfig wgConfig = config.getWorldConfig();
         SelectWorldGenDialog dialog = new SelectWorldGenDialog(wgConfig);
@@ -138,49 +203,174 @@ public class ConfigPanel extends JPanel {
         }
     }
 
+    /**
+     * Creates and initializes the new world generator in the background. The observers
+     * are notified on the UI thread once it is ready.
+     * @param wgConfig the new world config
+     */
     private void reloadWorldGen(WorldConfig wgConfig) {
-        SimpleUri worldGenUri = wgConfig.getWorldGen();
-        String worldSeed = wgConfig.getWorldSeed();
-        WorldGeneratorManager worldGeneratorManager = CoreRegistry.get(WorldGeneratorManager.class);
-        try {
-            worldGen = worldGeneratorManager.createGenerator(worldGenUri, context);
-            worldGen.setWorldSeed(worldSeed);
-            worldGen.initialize();
-
-            String wgName = worldGeneratorManager.getWorldGeneratorInfo(worldGenUri).getDisplayName();
-            int seaLevel = worldGen.getWorld().getSeaLevel();
-            worldGenLabel.setText(wgName);
-            seedLabel.setText(worldSeed);
-            seaLevelLabel.setText(seaLevel + " blocks");
-
-            if (configPanel != null) {
-                remove(configPanel);
+        String oldName = worldGenLabel.getText();
+        changeButton.setEnabled(false);
+        worldGenLabel.setText("Initializing ...");
+
+        SwingWorker<WorldGenerator, Void> worker = new SwingWorker<WorldGenerator, Void>() {
+
+            @Override
+            protected WorldGenerator doInBackground() throws Exception {
+                return createWorldGen(wgConfig);
             }
-            configPanel = createConfigPanel(worldGen.getConfigurator());
-            add(configPanel, BorderLayout.CENTER);
 
-            // then notify all observers
-            for (Observer<WorldGenerator> obs : observers) {
-                obs.update(worldGen);
+            @Override
+            protected void done() {
+                changeButton.setEnabled(true);
+                try {
+                    applyWorldGen(wgConfig, get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    worldGenLabel.setText(oldName);
+                    showError(wgConfig.getWorldGen(), ex.getCause() != null ? ex.getCause() : ex);
+                }
             }
-        } catch (Exception ex) {
-            String message = "<html>Could not create world generator<br>" + ex + "</html>";
-            logger.error("Could not create world generator {}", worldGenUri, ex);
-            JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
+        };
+        worker.execute();
+    }
+
+    /**
+     * Note: this method is not called on the UI thread
+     * @param wgConfig the world config
+     * @return a new, initialized world generator
+     */
+    private WorldGenerator createWorldGen(WorldConfig wgConfig) throws Exception {
+        WorldGeneratorManager worldGeneratorManager = CoreRegistry.get(WorldGeneratorManager.class);
+        WorldGenerator newWorldGen = worldGeneratorManager.createGenerator(wgConfig.getWorldGen(), context);
+        newWorldGen.setWorldSeed(wgConfig.getWorldSeed());
+        newWorldGen.initialize();
+        return newWorldGen;
+    }
+
+    private void applyWorldGen(WorldConfig wgConfig, WorldGenerator newWorldGen) {
+        worldGen = newWorldGen;
+
+        int seaLevel = worldGen.getWorld().getSeaLevel();
+        worldGenLabel.setText(getDisplayName(wgConfig.getWorldGen()));
+        seedLabel.setText(wgConfig.getWorldSeed());
+        seaLevelLabel.setText(seaLevel + " blocks");
+
+        // the edits refer to the configurator of the previous generator
+        undoStack.clear();
+        redoStack.clear();
+        updateUndoButtons();
+        rebuildConfigPanel();
+
+        // then notify all observers
+        for (Observer<WorldGenerator> obs : observers) {
+            obs.update(worldGen);
         }
     }
 
+    private static String getDisplayName(SimpleUri worldGenUri) {
+        WorldGeneratorManager worldGeneratorManager = CoreRegistry.get(WorldGeneratorManager.class);
+        return worldGeneratorManager.getWorldGeneratorInfo(worldGenUri).getDisplayName();
+    }
+
+    private static void showError(SimpleUri worldGenUri, Throwable ex) {
+        String message = "<html>Could not create world generator<br>" + ex + "</html>";
+        logger.error("Could not create world generator {}", worldGenUri, ex);
+        JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void rebuildConfigPanel() {
+        // a pending change would apply the old value of a replaced control again (e.g. after undo)
+        throttles.forEach(ChangeThrottle::cancel);
+        throttles.clear();
+        if (configPanel != null) {
+            remove(configPanel);
+        }
+        configPanel = createConfigPanel(worldGen.getConfigurator());
+        add(configPanel, BorderLayout.CENTER);
+        revalidate();
+        repaint();
+    }
+
     private void notifyObservers(String group, Field field, Object value) {
         WorldConfigurator configurator = worldGen.getConfigurator();
         Component comp = configurator.getProperties().get(group);
         Component clone = cloneAndSet(comp, field.getName(), value);
 
+        recordEdit(new PropertyEdit(group, field.getName(), comp, clone));
+        applyProperty(group, clone);
+    }
+
+    private void applyProperty(String group, Component comp) {
         // first notify the world generator about the new component
-        configurator.setProperty(group, clone);
+        worldGen.getConfigurator().setProperty(group, comp);
 
         // then notify all observers
-        for (Observer<WorldGenerator> obs : observers) {
-            obs.update(worldGen);
+        for (Observer<Component> obs : propertyObservers) {
+            obs.update(comp);
+        }
+    }
+
+    private void recordEdit(PropertyEdit edit) {
+        PropertyEdit last = undoStack.peekFirst();
+        if (last != null && last.canMerge(edit)) {
+            // a spinner that is held down creates many edits
+            last.after = edit.after;
+            last.time = edit.time;
+        } else {
+            undoStack.push(edit);
+        }
+        redoStack.clear();
+        updateUndoButtons();
+    }
+
+    private void undo() {
+        PropertyEdit edit = undoStack.poll();
+        if (edit != null) {
+            redoStack.push(edit);
+            applyProperty(edit.group, edit.before);
+            // the controls must show the restored value
+            rebuildConfigPanel();
+            updateUndoButtons();
+        }
+    }
+
+    private void redo() {
+        PropertyEdit edit = redoStack.poll();
+        if (edit != null) {
+            // prevent merging with the next edit
+            edit.time = 0;
+            undoStack.push(edit);
+            applyProperty(edit.group, edit.after);
+            rebuildConfigPanel();
+            updateUndoButtons();
+        }
+    }
+
+    private void updateUndoButtons() {
+        undoButton.setEnabled(!undoStack.isEmpty());
+        redoButton.setEnabled(!redoStack.isEmpty());
+    }
+
+    /**
+     * A change of a single field of a configurator property
+     */
+    private static final class PropertyEdit {
+
+        private final String group;
+        private final String field;
+        private final Component before;
+        private Component after;
+        private long time = System.currentTimeMillis();
+
+        PropertyEdit(String group, String field, Component before, Component after) {
+            this.group = group;
+            this.field = field;
+            this.before = before;
+            this.after = after;
+        }
+
+        boolean canMerge(PropertyEdit next) {
+            return group.equals(next.group) && field.equals(next.field) && next.time - time < MERGE_EDITS_MILLIS;
         }
     }
 
@@ -253,7 +443,10 @@ public class ConfigPanel extends JPanel {
 
         JSpinner spinner = UIBindings.processRangeAnnotation(component, field);
         if (spinner != null) {
-            spinner.addChangeListener(event -> notifyObservers(key, field, spinner.getValue()));
+            // holding down an arrow fires many events - the world is re-initialized for every notification
+            ChangeThrottle throttle = new ChangeThrottle(SPINNER_INTERVAL_MILLIS, () -> notifyObservers(key, field, spinner.getValue()));
+            spinner.addChangeListener(event -> throttle.changed());
+            throttles.add(throttle);
             comp = spinner;
         }
 
@@ -40,10 +40,13 @@ import javax.swing.table.TableModel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.terasology.world.viewer.gui.ChangeThrottle;
 import org.terasology.world.viewer.gui.UIBindings;
 import org.terasology.world.viewer.layers.FacetLayer;
 import org.terasology.world.viewer.layers.FacetLayerConfig;
 
+import com.google.common.collect.Lists;
+
 /**
  * The facet layer configuration panel (at the left)
  */
@@ -53,8 +56,18 @@ public class FacetPanel extends JPanel {
 
     private static final Logger logger = LoggerFactory.getLogger(FacetPanel.class);
 
+    /**
+     * The minimum time between two notifications of the same spinner
+     */
+    private static final int SPINNER_INTERVAL_MILLIS = 150;
+
     private final JPanel configPanel;
 
+    /**
+     * The throttles of the current controls - pending changes must not outlive them
+     */
+    private final List<ChangeThrottle> throttles = Lists.newArrayList();
+
     private JTable facetList;
 
     public FacetPanel() {
@@ -102,6 +115,10 @@ public class FacetPanel extends JPanel {
             facetLayer.addObserver(layer -> facetList.repaint());
         }
 
+        // a pending change would modify a layer that is no longer displayed
+        throttles.forEach(ChangeThrottle::cancel);
+        throttles.clear();
+
         CardLayout cardLayout = new CardLayout();
         configPanel.setLayout(cardLayout);
         configPanel.removeAll();
@@ -147,7 +164,7 @@ public class FacetPanel extends JPanel {
 
         JSpinner spinner = UIBindings.processRangeAnnotation(config, field);
         if (spinner != null) {
-            spinner.addChangeListener(event -> {
+            ChangeThrottle throttle = new ChangeThrottle(SPINNER_INTERVAL_MILLIS, () -> {
                 Number v = (Number) spinner.getValue();
                 try {
                     if (field.getType().equals(int.class) || field.getType().equals(Integer.class)) {
@@ -160,6 +177,8 @@ public class FacetPanel extends JPanel {
                     logger.warn("Could not set field '{}:{}'", layer, field, e);
                 }
             });
+            spinner.addChangeListener(event -> throttle.changed());
+            throttles.add(throttle);
             comp = spinner;
         }
 
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.WorldFacet;
+
+import com.google.common.collect.Maps;
+import com.google.common.math.IntMath;
+
+/**
+ * Provides read access to the facet data in a border around a region.
+ * The neighboring regions are resolved lazily, tile by tile. Not thread-safe.
+ */
+public final class Halo {
+
+    private final Region center;
+    private final int width;
+    private final int tileSizeX;
+    private final int tileSizeY;
+    private final Function<ImmutableVector2i, Region> tileRegions;
+    private final Runnable onRendered;
+
+    private final Map<ImmutableVector2i, Region> resolved = Maps.newHashMap();
+
+    /**
+     * @param center the region that is rendered
+     * @param width the border width in blocks
+     * @param tileSizeX the tile width in blocks
+     * @param tileSizeY the tile height in blocks
+     * @param tileRegions provides a region that covers (at least) the halo part of the given tile
+     * @param onRendered is called once the layer has been rendered
+     */
+    Halo(Region center, int width, int tileSizeX, int tileSizeY, Function<ImmutableVector2i, Region> tileRegions,
+            Runnable onRendered) {
+        this.center = center;
+        this.width = width;
+        this.tileSizeX = tileSizeX;
+        this.tileSizeY = tileSizeY;
+        this.tileRegions = tileRegions;
+        this.onRendered = onRendered;
+    }
+
+    /**
+     * Must be called once the layer has been rendered - the halo must not be used afterwards
+     */
+    void rendered() {
+        onRendered.run();
+    }
+
+    /**
+     * @return the border width in blocks
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @param wx the world x coord.
+     * @param wz the world z coord.
+     * @return true if the position is inside the region or its border
+     */
+    public boolean contains(int wx, int wz) {
+        Region3i area = center.getRegion();
+        return wx >= area.minX() - width && wx <= area.maxX() + width
+            && wz >= area.minZ() - width && wz <= area.maxZ() + width;
+    }
+
+    /**
+     * @param wx the world x coord.
+     * @param wz the world z coord.
+     * @return a region that contains the given position
+     * @throws IllegalArgumentException if the position is outside of the border
+     */
+    public Region getRegion(int wx, int wz) {
+        Region3i area = center.getRegion();
+        if (wx >= area.minX() && wx <= area.maxX() && wz >= area.minZ() && wz <= area.maxZ()) {
+            return center;
+        }
+
+        if (!contains(wx, wz)) {
+            throw new IllegalArgumentException("Position " + wx + "/" + wz + " is outside of the halo");
+        }
+
+        int tileX = IntMath.divide(wx, tileSizeX, RoundingMode.FLOOR);
+        int tileY = IntMath.divide(wz, tileSizeY, RoundingMode.FLOOR);
+        return resolved.computeIfAbsent(new ImmutableVector2i(tileX, tileY), tileRegions);
+    }
+
+    /**
+     * @param dataType the facet class
+     * @param wx the world x coord.
+     * @param wz the world z coord.
+     * @return the facet of the region that contains the given position
+     */
+    public <T extends WorldFacet> T getFacet(Class<T> dataType, int wx, int wz) {
+        return getRegion(wx, wz).getFacet(dataType);
+    }
+}
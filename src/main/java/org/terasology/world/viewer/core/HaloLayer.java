@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import java.awt.image.BufferedImage;
+
+import org.terasology.world.generation.Region;
+import org.terasology.world.viewer.layers.FacetLayer;
+
+/**
+ * A {@link FacetLayer} that needs to read facet data beyond the borders of the rendered region,
+ * for example to compute gradients or hill shading without seams at tile borders.
+ */
+public interface HaloLayer extends FacetLayer {
+
+    /**
+     * @return the width of the border around the region that is read (in blocks)
+     */
+    int getHaloWidth();
+
+    /**
+     * Renders the region. Facets of neighboring regions must be accessed through world coordinates.
+     * @param img the target image
+     * @param region the region to render
+     * @param halo provides the facet data around the region
+     */
+    void render(BufferedImage img, Region region, Halo halo);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
+import org.terasology.world.viewer.ThreadSafeRegion;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Creates {@link Halo}s for {@link HaloLayer}s. The border data is taken from the cached regions
+ * of the neighboring tiles. If a neighbor is not cached, only the strip of it that overlaps
+ * the border is generated (and cached separately). The strips are limited by bytes, just like
+ * the regions. Their facets are computed lazily, so they are weighed after every rendered halo.
+ */
+final class HaloService {
+
+    private static final int ENTRY_BYTES = 64;
+
+    private final int tileSizeX;
+    private final int tileSizeY;
+
+    private final WeightedCache<List<Integer>, Strip> strips;
+
+    /**
+     * @param tileSizeX the tile width in blocks
+     * @param tileSizeY the tile height in blocks
+     */
+    HaloService(int tileSizeX, int tileSizeY) {
+        this.tileSizeX = tileSizeX;
+        this.tileSizeY = tileSizeY;
+        this.strips = new WeightedCache<>("Halo strips", 0, strip -> ENTRY_BYTES + strip.bytes);
+    }
+
+    /**
+     * @return the cache of the border strips (to set the budget)
+     */
+    WeightedCache<?, ?> getStripCache() {
+        return strips;
+    }
+
+    /**
+     * @param center the region that is rendered
+     * @param width the border width in blocks
+     * @param neighbors provides the cached region of a tile (if it is high enough) or <code>null</code>
+     * @param world the world to generate missing border strips from
+     * @param worldVersion the version of the world
+     * @param stripFactory wraps the regions of the strips
+     * @return a new halo for the given region
+     */
+    Halo createHalo(Region center, int width, Function<ImmutableVector2i, Region> neighbors,
+            World world, int worldVersion, Function<Region, ThreadSafeRegion> stripFactory) {
+
+        Region3i area = center.getRegion();
+        int minX = area.minX() - width;
+        int minZ = area.minZ() - width;
+        int maxX = area.maxX() + width;
+        int maxZ = area.maxZ() + width;
+        Map<List<Integer>, Strip> used = Maps.newHashMap();
+
+        Function<ImmutableVector2i, Region> tileRegions = tile -> {
+            Region cached = neighbors.apply(tile);
+            if (cached != null) {
+                return cached;
+            }
+
+            // the part of the tile that overlaps the border
+            int stripMinX = Math.max(minX, tile.getX() * tileSizeX);
+            int stripMinZ = Math.max(minZ, tile.getY() * tileSizeY);
+            int stripMaxX = Math.min(maxX, (tile.getX() + 1) * tileSizeX - 1);
+            int stripMaxZ = Math.min(maxZ, (tile.getY() + 1) * tileSizeY - 1);
+            List<Integer> key = ImmutableList.of(worldVersion, stripMinX, stripMinZ, stripMaxX, stripMaxZ, area.minY(), area.maxY());
+
+            Strip strip = strips.getIfPresent(key);
+            if (strip == null) {
+                Vector3i min = new Vector3i(stripMinX, area.minY(), stripMinZ);
+                Vector3i max = new Vector3i(stripMaxX, area.maxY(), stripMaxZ);
+                strip = new Strip(stripFactory.apply(world.getWorldData(Region3i.createFromMinMax(min, max))));
+                strips.put(key, strip);
+            }
+            used.put(key, strip);
+            return strip.region;
+        };
+
+        return new Halo(center, width, tileSizeX, tileSizeY, tileRegions, () -> updateWeights(used));
+    }
+
+    /**
+     * Weighs the strips that a halo has accessed again, since the layer might have computed new facets.
+     * Strips that have been evicted in the meantime are not added again.
+     */
+    private void updateWeights(Map<List<Integer>, Strip> used) {
+        for (Map.Entry<List<Integer>, Strip> entry : used.entrySet()) {
+            Strip strip = entry.getValue();
+            // measured outside of the cache lock
+            strip.bytes = RegionBatch.measure(strip.region);
+            if (strips.getIfPresent(entry.getKey()) == strip) {
+                strips.put(entry.getKey(), strip);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        strips.invalidateAll();
+    }
+
+    private static final class Strip {
+        private final ThreadSafeRegion region;
+        private volatile long bytes;
+
+        Strip(ThreadSafeRegion region) {
+            this.region = region;
+        }
+    }
+}
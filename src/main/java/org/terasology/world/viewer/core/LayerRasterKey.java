@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import java.util.Objects;
+
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.world.viewer.layers.FacetLayer;
+
+/**
+ * Identifies the raster of a single facet layer for a single tile.
+ */
+final class LayerRasterKey {
+
+    private final ImmutableVector2i pos;
+    private final int worldVersion;
+    private final FacetLayer layer;
+    private final int configVersion;
+
+    /**
+     * @param pos the tile position
+     * @param worldVersion the version of the world that the region was generated from
+     * @param layer the facet layer
+     * @param configVersion the version of the layer config
+     */
+    LayerRasterKey(ImmutableVector2i pos, int worldVersion, FacetLayer layer, int configVersion) {
+        this.pos = pos;
+        this.worldVersion = worldVersion;
+        this.layer = layer;
+        this.configVersion = configVersion;
+    }
+
+    int getWorldVersion() {
+        return worldVersion;
+    }
+
+    FacetLayer getLayer() {
+        return layer;
+    }
+
+    /**
+     * @param newWorldVersion the new world version
+     * @return a key for the same raster in a different world version
+     */
+    LayerRasterKey withWorldVersion(int newWorldVersion) {
+        return new LayerRasterKey(pos, newWorldVersion, layer, configVersion);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pos, worldVersion, layer, configVersion);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LayerRasterKey)) {
+            return false;
+        }
+        LayerRasterKey other = (LayerRasterKey) obj;
+        return worldVersion == other.worldVersion
+            && configVersion == other.configVersion
+            && layer == other.layer
+            && Objects.equals(pos, other.pos);
+    }
+
+    @Override
+    public String toString() {
+        return "LayerRasterKey [" + pos + ", " + layer + " v" + configVersion + "]";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.terasology.world.viewer.layers.FacetLayer;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+
+/**
+ * Tracks the config version of facet layers. Layers notify their observers when they
+ * change visibility, order or config, so the config is compared with the last known
+ * state to find out whether the rendered content has actually changed.
+ * Recently used configs keep their version, so that their rasters can be reused.
+ * Not thread-safe.
+ */
+final class LayerVersions {
+
+    /**
+     * The number of configs per layer that are remembered
+     */
+    private static final int MAX_STATES = 16;
+
+    private final Gson gson = new Gson();
+
+    private final Map<FacetLayer, String> configs = Maps.newIdentityHashMap();
+    private final Map<FacetLayer, Integer> versions = Maps.newIdentityHashMap();
+    private final Map<FacetLayer, Map<String, Integer>> history = Maps.newIdentityHashMap();
+
+    private int nextVersion = 1;
+
+    /**
+     * Updates the version of the layer if its config has changed since the last call.
+     * @param layer the layer to check
+     * @return true if the config has changed
+     */
+    public boolean update(FacetLayer layer) {
+        String json = (layer.getConfig() != null) ? gson.toJson(layer.getConfig()) : "";
+        String prev = configs.put(layer, json);
+        if (json.equals(prev)) {
+            return false;
+        }
+        Map<String, Integer> known = history.computeIfAbsent(layer, l -> createHistory());
+        Integer version = known.get(json);
+        if (version == null) {
+            version = nextVersion++;
+            known.put(json, version);
+        }
+        versions.put(layer, version);
+        return true;
+    }
+
+    private static Map<String, Integer> createHistory() {
+        return new LinkedHashMap<String, Integer>(MAX_STATES, 0.75f, true) {
+
+            private static final long serialVersionUID = 2372645734628318513L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > MAX_STATES;
+            }
+        };
+    }
+
+    /**
+     * @return an immutable snapshot of the current versions
+     */
+    public Map<FacetLayer, Integer> snapshot() {
+        return ImmutableMap.copyOf(versions);
+    }
+}
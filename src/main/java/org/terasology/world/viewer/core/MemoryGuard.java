@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Shrinks the budgets of {@link WeightedCache}s when the heap fills up and restores them
+ * once there is enough free memory again. The heap usage is measured after garbage collection
+ * (collection usage of the heap pools), since the current usage includes garbage.
+ * The JVM notifies the guard as soon as the pressure threshold is exceeded, in addition the
+ * usage is polled regularly. Above the critical threshold, no new regions should be generated.
+ */
+final class MemoryGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryGuard.class);
+
+    private static final int INTERVAL_MILLIS = 2000;
+
+    /**
+     * The budgets shrink if more of the heap is used after GC
+     */
+    private static final double PRESSURE = 0.75;
+
+    /**
+     * No new regions are generated if more of the heap is used after GC
+     */
+    private static final double CRITICAL = 0.9;
+
+    /**
+     * The budgets grow again if less of the heap is used after GC
+     */
+    private static final double RELAXED = 0.5;
+
+    private static final double SHRINK_FACTOR = 0.7;
+    private static final double GROW_STEP = 0.1;
+    private static final double MIN_FACTOR = 0.2;
+
+    private final Map<WeightedCache<?, ?>, Long> baseBudgets = Maps.newConcurrentMap();
+    private final List<MemoryPoolMXBean> pools = Lists.newArrayList();
+    private final NotificationListener listener = this::onNotification;
+    private final Timer timer;
+    private final Runnable onRelief;
+
+    private volatile double factor = 1.0;
+    private volatile boolean critical;
+
+    /**
+     * @param onRelief called on the UI thread when the heap is no longer critical
+     */
+    MemoryGuard(Runnable onRelief) {
+        this.onRelief = onRelief;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && isTenured(pool) && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * PRESSURE));
+                pools.add(pool);
+            }
+        }
+        timer = new Timer(INTERVAL_MILLIS, e -> update());
+    }
+
+    /**
+     * Young generation pools (eden, survivor) don't support usage thresholds - they are
+     * either empty or full after GC, so they are not relevant.
+     */
+    private static boolean isTenured(MemoryPoolMXBean pool) {
+        return pool.isUsageThresholdSupported() && pool.isCollectionUsageThresholdSupported();
+    }
+
+    /**
+     * @param cache the cache to control
+     * @param budget the budget without memory pressure
+     */
+    public void register(WeightedCache<?, ?> cache, long budget) {
+        baseBudgets.put(cache, budget);
+        cache.setBudget((long) (budget * factor));
+    }
+
+    public void start() {
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(listener, null, null);
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+        try {
+            NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+            emitter.removeNotificationListener(listener);
+        } catch (ListenerNotFoundException e) {
+            // not started
+        }
+    }
+
+    /**
+     * @return true if the heap is almost exhausted - no new regions should be generated
+     */
+    public boolean isCritical() {
+        return critical;
+    }
+
+    /**
+     * @return the current fraction of the base budgets
+     */
+    public double getBudgetFactor() {
+        return factor;
+    }
+
+    /**
+     * Called by the JVM (not on the UI thread)
+     */
+    private void onNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            SwingUtilities.invokeLater(this::update);
+        }
+    }
+
+    private void update() {
+        double usage = getUsageAfterGc();
+        boolean wasCritical = critical;
+        critical = usage > CRITICAL;
+
+        if (usage > PRESSURE && factor > MIN_FACTOR) {
+            setFactor(Math.max(MIN_FACTOR, factor * SHRINK_FACTOR));
+            logger.info("Heap usage after GC at {}% - reducing cache budgets to {}%", (int) (usage * 100), (int) (factor * 100));
+        } else if (usage < RELAXED && factor < 1.0) {
+            setFactor(Math.min(1.0, factor + GROW_STEP));
+            logger.debug("Heap usage after GC at {}% - increasing cache budgets to {}%", (int) (usage * 100), (int) (factor * 100));
+        }
+
+        if (wasCritical && !critical) {
+            onRelief.run();
+        }
+    }
+
+    private void setFactor(double newFactor) {
+        factor = newFactor;
+        for (Map.Entry<WeightedCache<?, ?>, Long> entry : baseBudgets.entrySet()) {
+            entry.getKey().setBudget((long) (entry.getValue() * newFactor));
+        }
+    }
+
+    /**
+     * @return the highest fraction of a heap pool that was in use after the last GC
+     */
+    private double getUsageAfterGc() {
+        double max = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0) {
+                max = Math.max(max, (double) usage.getUsed() / usage.getMax());
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Cache budgets at %d%%%s", (int) (factor * 100), critical ? ", region generation paused" : "");
+    }
+}
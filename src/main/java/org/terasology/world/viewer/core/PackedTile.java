@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compact form of a tile image. Most layers produce only a few distinct colors,
+ * so the pixels are stored as indices into a palette (4 or 8 bits per pixel) where possible.
+ * Otherwise, the ARGB values are deflated at the fastest level. Immutable.
+ */
+final class PackedTile {
+
+    private static final int MAX_NIBBLE_COLORS = 16;
+    private static final int MAX_BYTE_COLORS = 256;
+
+    /**
+     * Tiles that cannot be compressed to this fraction of their raw size are not packed
+     */
+    private static final double MAX_RATIO = 0.5;
+
+    private static final int OBJECT_BYTES = 48;
+
+    private final int pixelCount;
+
+    /**
+     * The colors or <code>null</code> if the data contains deflated ARGB values
+     */
+    private final int[] palette;
+    private final byte[] data;
+
+    private PackedTile(int pixelCount, int[] palette, byte[] data) {
+        this.pixelCount = pixelCount;
+        this.palette = palette;
+        this.data = data;
+    }
+
+    /**
+     * @param pixels the ARGB values of the tile
+     * @return the packed tile or <code>null</code> if the pixels cannot be compressed sufficiently
+     */
+    public static PackedTile pack(int[] pixels) {
+        int[] palette = new int[MAX_BYTE_COLORS];
+        int colors = 0;
+        int last = 0;
+        byte[] indices = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            // neighboring pixels usually have the same color
+            if (colors == 0 || palette[last] != argb) {
+                last = indexOf(palette, colors, argb);
+                if (last < 0) {
+                    if (colors == MAX_BYTE_COLORS) {
+                        return deflate(pixels);
+                    }
+                    last = colors++;
+                    palette[last] = argb;
+                }
+            }
+            indices[i] = (byte) last;
+        }
+
+        int[] usedPalette = new int[colors];
+        System.arraycopy(palette, 0, usedPalette, 0, colors);
+        if (colors == 1) {
+            return new PackedTile(pixels.length, usedPalette, new byte[0]);
+        }
+        if (colors <= MAX_NIBBLE_COLORS) {
+            byte[] nibbles = new byte[(pixels.length + 1) / 2];
+            for (int i = 0; i < pixels.length; i++) {
+                nibbles[i >> 1] |= indices[i] << ((i & 1) * 4);
+            }
+            return new PackedTile(pixels.length, usedPalette, nibbles);
+        }
+        return new PackedTile(pixels.length, usedPalette, indices);
+    }
+
+    private static int indexOf(int[] palette, int colors, int argb) {
+        for (int i = 0; i < colors; i++) {
+            if (palette[i] == argb) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static PackedTile deflate(int[] pixels) {
+        ByteBuffer raw = ByteBuffer.allocate(pixels.length * Integer.BYTES).order(ByteOrder.nativeOrder());
+        raw.asIntBuffer().put(pixels);
+
+        int limit = (int) (raw.capacity() * MAX_RATIO);
+        byte[] out = new byte[limit];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            int length = deflater.deflate(out);
+            if (!deflater.finished()) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            System.arraycopy(out, 0, data, 0, length);
+            return new PackedTile(pixels.length, null, data);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param pixels receives the ARGB values of the tile
+     */
+    public void unpack(int[] pixels) {
+        if (palette == null) {
+            inflate(pixels);
+        } else if (palette.length == 1) {
+            Arrays.fill(pixels, 0, pixelCount, palette[0]);
+        } else if (palette.length <= MAX_NIBBLE_COLORS) {
+            for (int i = 0; i < pixelCount; i++) {
+                pixels[i] = palette[(data[i >> 1] >> ((i & 1) * 4)) & 0xF];
+            }
+        } else {
+            for (int i = 0; i < pixelCount; i++) {
+                pixels[i] = palette[data[i] & 0xFF];
+            }
+        }
+    }
+
+    private void inflate(int[] pixels) {
+        byte[] raw = new byte[pixelCount * Integer.BYTES];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            inflater.inflate(raw);
+        } catch (DataFormatException e) {
+            // the data was deflated by this class
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer.wrap(raw).order(ByteOrder.nativeOrder()).asIntBuffer().get(pixels, 0, pixelCount);
+    }
+
+    /**
+     * @return the approx. heap size in bytes
+     */
+    public long getBytes() {
+        int paletteBytes = (palette != null) ? 16 + palette.length * Integer.BYTES : 0;
+        return OBJECT_BYTES + paletteBytes + data.length;
+    }
+}
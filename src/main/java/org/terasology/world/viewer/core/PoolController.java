@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import javax.swing.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.world.viewer.config.PoolMode;
+
+/**
+ * Adjusts the number of worker threads of a {@link TileScheduler} based on the measured
+ * tile throughput, the time spent in garbage collection and the time the workers are blocked
+ * on locks. The pool shrinks if GC or lock contention exceed the limits of the {@link PoolMode}.
+ * Otherwise, it grows one thread at a time as long as that improves the throughput (hill climbing).
+ * The pool size is only changed while there is a backlog of tasks.
+ */
+class PoolController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolController.class);
+
+    private static final int INTERVAL_MILLIS = 1000;
+
+    /**
+     * The minimum relative throughput gain that justifies an additional thread
+     */
+    private static final double MIN_GAIN = 0.05;
+
+    /**
+     * The number of intervals to wait after a growth step was reverted
+     */
+    private static final int COOLDOWN = 5;
+
+    private final TileScheduler scheduler;
+    private final PoolMode mode;
+    private final int minSize;
+    private final int maxSize;
+    private final Timer timer;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private long lastTime;
+    private long lastCompleted;
+    private long lastGcTime;
+    private long lastBlockedTime;
+
+    private double lastThroughput;
+    private boolean grown;
+    private int cooldown;
+
+    private volatile String reason = "not started";
+
+    /**
+     * @param scheduler the scheduler to control
+     * @param mode the optimization goal
+     * @param minSize the minimum number of threads
+     * @param maxSize the maximum number of threads
+     */
+    PoolController(TileScheduler scheduler, PoolMode mode, int minSize, int maxSize) {
+        this.scheduler = scheduler;
+        this.mode = mode;
+        this.minSize = Math.max(1, minSize);
+
+        int upper = Math.max(this.minSize, maxSize);
+        if (mode == PoolMode.LATENCY) {
+            // leave one processor for the UI thread
+            int spare = Runtime.getRuntime().availableProcessors() - 1;
+            upper = Math.max(this.minSize, Math.min(upper, spare));
+        }
+        this.maxSize = upper;
+
+        if (threadBean.isThreadContentionMonitoringSupported()) {
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        timer = new Timer(INTERVAL_MILLIS, e -> update());
+    }
+
+    public void start() {
+        int size = Math.max(minSize, Math.min(maxSize, scheduler.getPoolSize()));
+        scheduler.setPoolSize(size);
+
+        lastTime = System.nanoTime();
+        lastCompleted = scheduler.getCompletedTasks();
+        lastGcTime = getGcTime();
+        lastBlockedTime = getBlockedTime();
+        reason = "initial size";
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * @return the current number of threads
+     */
+    public int getPoolSize() {
+        return scheduler.getPoolSize();
+    }
+
+    /**
+     * @return a human-readable description of the last decision
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public PoolMode getMode() {
+        return mode;
+    }
+
+    private void update() {
+        long time = System.nanoTime();
+        long completed = scheduler.getCompletedTasks();
+        long gcTime = getGcTime();
+        long blockedTime = getBlockedTime();
+
+        double elapsedMillis = (time - lastTime) / 1e6;
+        int size = scheduler.getPoolSize();
+
+        double throughput = (completed - lastCompleted) * 1000 / elapsedMillis;
+        double gcShare = (gcTime - lastGcTime) / elapsedMillis;
+        // terminated workers take their blocked time with them
+        double blockedShare = Math.max(0, blockedTime - lastBlockedTime) / (elapsedMillis * size);
+
+        lastTime = time;
+        lastCompleted = completed;
+        lastGcTime = gcTime;
+        lastBlockedTime = blockedTime;
+
+        String stats = String.format("%.1f tiles/s, GC %.0f%%, blocked %.0f%%", throughput, gcShare * 100, blockedShare * 100);
+        int newSize = size;
+
+        if (scheduler.getPendingTasks() < size) {
+            // not enough work to measure anything
+            grown = false;
+            reason = "idle";
+        } else if (gcShare > getGcLimit()) {
+            newSize = size - 1;
+            grown = false;
+            reason = "GC overhead - " + stats;
+        } else if (blockedShare > getContentionLimit()) {
+            newSize = size - 1;
+            grown = false;
+            reason = "lock contention - " + stats;
+        } else if (grown && throughput < lastThroughput * (1 + MIN_GAIN)) {
+            newSize = size - 1;
+            grown = false;
+            cooldown = COOLDOWN;
+            reason = "no gain from last thread - " + stats;
+        } else if (cooldown > 0) {
+            cooldown--;
+            grown = false;
+            reason = "stable - " + stats;
+        } else if (size < maxSize) {
+            newSize = size + 1;
+            grown = true;
+            reason = "probing - " + stats;
+        } else {
+            grown = false;
+            reason = "upper bound - " + stats;
+        }
+
+        newSize = Math.max(minSize, Math.min(maxSize, newSize));
+        lastThroughput = throughput;
+
+        if (newSize != size) {
+            logger.debug("Changing pool size from {} to {}: {}", size, newSize, reason);
+            scheduler.setPoolSize(newSize);
+        }
+    }
+
+    private double getGcLimit() {
+        return (mode == PoolMode.LATENCY) ? 0.05 : 0.15;
+    }
+
+    private double getContentionLimit() {
+        return (mode == PoolMode.LATENCY) ? 0.25 : 0.5;
+    }
+
+    /**
+     * @return the accumulated GC time of all collectors in milliseconds
+     */
+    private long getGcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gcBean : gcBeans) {
+            total += Math.max(0, gcBean.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * @return the accumulated time that the live worker threads were blocked on monitors in milliseconds
+     */
+    private long getBlockedTime() {
+        if (!threadBean.isThreadContentionMonitoringEnabled()) {
+            return 0;
+        }
+        long total = 0;
+        for (ThreadInfo info : threadBean.getThreadInfo(scheduler.getWorkerThreadIds())) {
+            if (info != null) {
+                // waiting time is not included - idle workers wait for the task queue
+                total += Math.max(0, info.getBlockedTime());
+            }
+        }
+        return total;
+    }
+}
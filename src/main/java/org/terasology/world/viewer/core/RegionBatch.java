@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import java.util.List;
+
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.viewer.ThreadSafeRegion;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A single region that covers a square block of neighboring tiles.
+ * Every covered tile maps to the same batch in the region cache.
+ */
+final class RegionBatch {
+
+    /**
+     * The tag of batches whose facets might have been computed while the generator was re-initialized
+     */
+    static final int UNVERIFIED = -1;
+
+    private final ImmutableVector2i origin;
+    private final int size;
+    private final ThreadSafeRegion region;
+    private final List<ImmutableVector2i> tiles;
+
+    private volatile long bytes;
+    private volatile int initRequest = UNVERIFIED;
+
+    /**
+     * @param origin the tile with the smallest coordinates
+     * @param size the number of tiles in x and y direction
+     * @param region the region that covers all tiles
+     */
+    RegionBatch(ImmutableVector2i origin, int size, ThreadSafeRegion region) {
+        this.origin = origin;
+        this.size = size;
+        this.region = region;
+        this.tiles = getTiles(origin, size);
+    }
+
+    /**
+     * @param origin the tile with the smallest coordinates
+     * @param size the number of tiles in x and y direction
+     * @return an immutable list of all tiles in the block, in row-major order
+     */
+    static List<ImmutableVector2i> getTiles(ImmutableVector2i origin, int size) {
+        ImmutableList.Builder<ImmutableVector2i> builder = ImmutableList.builder();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                builder.add(new ImmutableVector2i(origin.getX() + x, origin.getY() + y));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param pos a tile position
+     * @param size the batch size
+     * @return the origin of the batch of the given size that contains the tile
+     */
+    static ImmutableVector2i getOrigin(ImmutableVector2i pos, int size) {
+        return new ImmutableVector2i(Math.floorDiv(pos.getX(), size) * size, Math.floorDiv(pos.getY(), size) * size);
+    }
+
+    public ImmutableVector2i getOrigin() {
+        return origin;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public ThreadSafeRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Measures the facets that have been computed so far. Must be called whenever facets were added.
+     */
+    void updateBytes() {
+        bytes = measure(region);
+    }
+
+    /**
+     * @param region the region
+     * @return the approx. size of the facets that have been computed so far in bytes
+     */
+    static long measure(ThreadSafeRegion region) {
+        long total = 0;
+        for (Class<? extends WorldFacet> facet : region.getFacets()) {
+            if (region.hasFacet(facet)) {
+                try {
+                    total += SizeEstimator.estimate(region.getFacet(facet));
+                } catch (RuntimeException e) {
+                    // the facet could not be computed
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Cheap alternative to {@link #updateBytes()} for batches that share facets of another batch.
+     * @param estimate the estimated size in bytes
+     */
+    void setBytes(long estimate) {
+        bytes = estimate;
+    }
+
+    /**
+     * @return the approx. size of the computed facets in bytes (as of the last call to {@link #updateBytes()})
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the initialization request of the world generator that all facets were computed for
+     * or {@link #UNVERIFIED}
+     */
+    public int getInitRequest() {
+        return initRequest;
+    }
+
+    /**
+     * @param initRequest the initialization request of the world generator that all facets were computed for
+     * or {@link #UNVERIFIED} while facets are added
+     */
+    void setInitRequest(int initRequest) {
+        this.initRequest = initRequest;
+    }
+
+    /**
+     * @return an immutable list of all covered tiles
+     */
+    public List<ImmutableVector2i> getTiles() {
+        return tiles;
+    }
+
+    @Override
+    public String toString() {
+        return "RegionBatch [" + origin + ", " + size + "x" + size + "]";
+    }
+}
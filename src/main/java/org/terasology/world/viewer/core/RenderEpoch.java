@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.WorldFacet3D;
+import org.terasology.world.viewer.layers.FacetLayer;
+import org.terasology.world.viewer.layers.Renders;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An immutable snapshot of the world and the visible facet layers that is captured by every tile task.
+ * The world version identifies the configuration of the world generator - returning to
+ * a previous configuration restores its version. The layer version changes whenever a facet layer
+ * (or its configuration) changes. In addition, every layer has a config version that identifies its config.
+ * Results that were computed for an outdated epoch must never be published.
+ */
+final class RenderEpoch {
+
+    private final int worldVersion;
+    private final int layerVersion;
+    private final World world;
+    private final List<FacetLayer> layers;
+    private final Map<FacetLayer, Integer> configVersions;
+    private final Set<Class<? extends WorldFacet>> requiredFacets;
+
+    /**
+     * The versions of region tasks, indexed by the binary logarithm of the batch size
+     */
+    private final Object[] regionTaskVersions = new Object[Integer.SIZE];
+
+    /**
+     * @param worldVersion the world version
+     * @param layerVersion the layer version
+     * @param world the world (may be <code>null</code>)
+     * @param layers the visible layers in rendering order
+     * @param configVersions the config version of the layers
+     */
+    RenderEpoch(int worldVersion, int layerVersion, World world, List<FacetLayer> layers, Map<FacetLayer, Integer> configVersions) {
+        this.worldVersion = worldVersion;
+        this.layerVersion = layerVersion;
+        this.world = world;
+        this.layers = ImmutableList.copyOf(layers);
+        this.configVersions = ImmutableMap.copyOf(configVersions);
+        this.requiredFacets = getRenderedFacets(layers);
+    }
+
+    private static Set<Class<? extends WorldFacet>> getRenderedFacets(List<FacetLayer> layers) {
+        ImmutableSet.Builder<Class<? extends WorldFacet>> builder = ImmutableSet.builder();
+        for (FacetLayer layer : layers) {
+            Class<? extends WorldFacet> facet = getRenderedFacet(layer);
+            if (facet != null) {
+                builder.add(facet);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param layer the facet layer
+     * @return the facet that is rendered by the layer or <code>null</code> if not annotated
+     */
+    static Class<? extends WorldFacet> getRenderedFacet(FacetLayer layer) {
+        Renders renders = layer.getClass().getAnnotation(Renders.class);
+        return (renders != null) ? renders.value() : null;
+    }
+
+    /**
+     * @param newWorld the new world
+     * @param newWorldVersion the version of the new world - equal configurations share the same version
+     * @return a new epoch with the given world version
+     */
+    public RenderEpoch nextWorld(World newWorld, int newWorldVersion) {
+        return new RenderEpoch(newWorldVersion, layerVersion, newWorld, layers, configVersions);
+    }
+
+    /**
+     * @param newLayers the new list of visible layers
+     * @param newConfigVersions the new config versions of the layers
+     * @return a new epoch with an incremented layer version
+     */
+    public RenderEpoch nextLayers(List<FacetLayer> newLayers, Map<FacetLayer, Integer> newConfigVersions) {
+        return new RenderEpoch(worldVersion, layerVersion + 1, world, newLayers, newConfigVersions);
+    }
+
+    public int getWorldVersion() {
+        return worldVersion;
+    }
+
+    /**
+     * Region tasks for the same batch origin are only equivalent if they have the same size.
+     * The version is created only once per epoch, since it is checked for every visible tile.
+     * @param batchSize the batch size (a power of two)
+     * @return the version of region tasks of that size
+     */
+    public Object getRegionTaskVersion(int batchSize) {
+        int index = Integer.numberOfTrailingZeros(batchSize);
+        Object version = regionTaskVersions[index];
+        if (version == null) {
+            // racing threads create equal versions
+            version = ImmutableList.of(worldVersion, batchSize);
+            regionTaskVersions[index] = version;
+        }
+        return version;
+    }
+
+    public int getLayerVersion() {
+        return layerVersion;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * @return an immutable list of the visible layers in rendering order
+     */
+    public List<FacetLayer> getLayers() {
+        return layers;
+    }
+
+    /**
+     * @return the facets that are rendered by the visible layers (derived from {@link Renders})
+     */
+    public Set<Class<? extends WorldFacet>> getRequiredFacets() {
+        return requiredFacets;
+    }
+
+    /**
+     * @return true if at least one of the required facets is a 3D facet
+     */
+    public boolean requires3D() {
+        for (Class<? extends WorldFacet> facet : requiredFacets) {
+            if (WorldFacet3D.class.isAssignableFrom(facet)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param layer the layer
+     * @return the config version of the layer
+     */
+    public int getConfigVersion(FacetLayer layer) {
+        Integer version = configVersions.get(layer);
+        return (version != null) ? version.intValue() : 0;
+    }
+
+    /**
+     * @param other another epoch
+     * @return true if both epochs refer to the same world version
+     */
+    public boolean isSameWorld(RenderEpoch other) {
+        return worldVersion == other.worldVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderEpoch [world " + worldVersion + ", layers " + layerVersion + "]";
+    }
+}
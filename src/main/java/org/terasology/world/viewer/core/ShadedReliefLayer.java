@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.terasology.math.Region3i;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.facets.SurfaceHeightFacet;
+import org.terasology.world.viewer.layers.AbstractFacetLayer;
+import org.terasology.world.viewer.layers.Renders;
+
+/**
+ * Darkens the slopes of the surface that face away from a light in the north-west.
+ * The slope of a block depends on its four neighbors, so the border blocks are taken from the {@link Halo}.
+ */
+@Renders(value = SurfaceHeightFacet.class, order = 10)
+public class ShadedReliefLayer extends AbstractFacetLayer implements HaloLayer {
+
+    private static final float LIGHT = (float) (1 / Math.sqrt(3));
+
+    private static final int MAX_ALPHA = 160;
+
+    @Override
+    public int getHaloWidth() {
+        return 1;
+    }
+
+    @Override
+    public void render(BufferedImage img, Region region) {
+        throw new UnsupportedOperationException("A halo is required");
+    }
+
+    @Override
+    public void render(BufferedImage img, Region region, Halo halo) {
+        SurfaceHeightFacet center = region.getFacet(SurfaceHeightFacet.class);
+        Region3i area = region.getRegion();
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        int width = img.getWidth();
+
+        for (int z = 0; z < area.sizeZ(); z++) {
+            for (int x = 0; x < area.sizeX(); x++) {
+                int wx = area.minX() + x;
+                int wz = area.minZ() + z;
+                float dx = (getHeight(center, area, halo, wx + 1, wz) - getHeight(center, area, halo, wx - 1, wz)) * 0.5f;
+                float dz = (getHeight(center, area, halo, wx, wz + 1) - getHeight(center, area, halo, wx, wz - 1)) * 0.5f;
+
+                // the normal (-dx, 1, -dz) against the light direction (-1, 1, -1)
+                float shade = (dx + 1 + dz) * LIGHT / (float) Math.sqrt(dx * dx + 1 + dz * dz);
+                int alpha = Math.round(MAX_ALPHA * (1 - Math.max(0, Math.min(1, shade))));
+                pixels[z * width + x] = alpha << 24;
+            }
+        }
+    }
+
+    private static float getHeight(SurfaceHeightFacet center, Region3i area, Halo halo, int wx, int wz) {
+        if (wx >= area.minX() && wx <= area.maxX() && wz >= area.minZ() && wz <= area.maxZ()) {
+            return center.getWorld(wx, wz);
+        }
+        return halo.getFacet(SurfaceHeightFacet.class, wx, wz).getWorld(wx, wz);
+    }
+
+    @Override
+    public String getWorldText(Region region, int wx, int wy) {
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates the heap size of object graphs such as facets. Primitive arrays - where the bulk of
+ * the facet data lives - are measured exactly, object headers and references are approximated
+ * (64-bit JVM with compressed references).
+ */
+final class SizeEstimator {
+
+    private static final int HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int MAP_ENTRY = 32;
+
+    /**
+     * Object graphs are not followed any deeper
+     */
+    private static final int MAX_DEPTH = 8;
+
+    private SizeEstimator() {
+        // no instances
+    }
+
+    /**
+     * @param image the image
+     * @return the size of the pixel data in bytes
+     */
+    public static long estimate(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long bits = (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType());
+        return HEADER + bits / 8;
+    }
+
+    /**
+     * @param root the root of the object graph
+     * @return the approx. number of bytes that are reachable from the root
+     */
+    public static long estimate(Object root) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        return estimate(root, visited, 0);
+    }
+
+    private static long estimate(Object obj, Set<Object> visited, int depth) {
+        if (obj == null || obj instanceof Class || obj instanceof Enum || depth >= MAX_DEPTH || !visited.add(obj)) {
+            // shared or already counted
+            return 0;
+        }
+
+        Class<?> clazz = obj.getClass();
+        if (clazz.isArray()) {
+            int length = Array.getLength(obj);
+            Class<?> type = clazz.getComponentType();
+            if (type.isPrimitive()) {
+                return HEADER + (long) length * primitiveSize(type);
+            }
+            long size = HEADER + (long) length * REFERENCE;
+            for (int i = 0; i < length; i++) {
+                size += estimate(Array.get(obj, i), visited, depth + 1);
+            }
+            return size;
+        }
+
+        if (obj instanceof Map) {
+            // the internals of JDK collections are not accessible
+            Map<?, ?> map = (Map<?, ?>) obj;
+            long size = HEADER + (long) map.size() * MAP_ENTRY;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimate(entry.getKey(), visited, depth + 1);
+                size += estimate(entry.getValue(), visited, depth + 1);
+            }
+            return size;
+        }
+
+        if (obj instanceof Iterable) {
+            long size = HEADER;
+            for (Object element : (Iterable<?>) obj) {
+                size += REFERENCE + estimate(element, visited, depth + 1);
+            }
+            return size;
+        }
+
+        long size = HEADER;
+        for (Class<?> c = clazz; c != Object.class && c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    Class<?> type = field.getType();
+                    if (type.isPrimitive()) {
+                        size += primitiveSize(type);
+                    } else {
+                        size += REFERENCE;
+                        try {
+                            field.setAccessible(true);
+                            size += estimate(field.get(obj), visited, depth + 1);
+                        } catch (ReflectiveOperationException | RuntimeException e) {
+                            // not accessible - only the reference is counted
+                        }
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+}
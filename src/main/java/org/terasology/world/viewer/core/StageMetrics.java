@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+/**
+ * An immutable snapshot of the queue metrics of a single pipeline stage.
+ */
+public final class StageMetrics {
+
+    private final String name;
+    private final int threads;
+    private final int active;
+    private final int queued;
+    private final long completed;
+    private final long cancelled;
+    private final double avgTaskMillis;
+
+    StageMetrics(String name, int threads, int active, int queued, long completed, long cancelled, double avgTaskMillis) {
+        this.name = name;
+        this.threads = threads;
+        this.active = active;
+        this.queued = queued;
+        this.completed = completed;
+        this.cancelled = cancelled;
+        this.avgTaskMillis = avgTaskMillis;
+    }
+
+    /**
+     * @return the name of the stage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the number of tasks in progress
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return the number of tasks that wait for a worker thread
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return the total number of completed tasks
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return the total number of cancelled or dropped tasks
+     */
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the average run time of completed tasks in milliseconds
+     */
+    public double getAvgTaskMillis() {
+        return avgTaskMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d active, %d queued, %d done, %d cancelled, %.1fms avg.",
+                name, active, threads, queued, completed, cancelled, avgTaskMillis);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.Collection;
+
+import org.terasology.math.geom.ImmutableVector2i;
+
+/**
+ * The cached tiles whose images are outdated. Every marker remembers the epoch it was last requested for,
+ * so that visible tiles are requested only once per epoch and can be looked up by coordinates
+ * without creating key objects. The markers are replaced as a whole when the layers change,
+ * so tiles that have left all caches in the meantime are forgotten.
+ * Thread-safe.
+ */
+final class StaleTiles {
+
+    private TileIndex<Marker> markers = new TileIndex<>(0);
+
+    /**
+     * Replaces all markers
+     * @param tiles the positions of all cached tiles
+     */
+    public synchronized void reset(Collection<ImmutableVector2i> tiles) {
+        markers = new TileIndex<>(tiles.size());
+        for (ImmutableVector2i pos : tiles) {
+            markers.put(TileKeys.pack(pos.getX(), pos.getY()), new Marker(pos));
+        }
+    }
+
+    public synchronized boolean contains(ImmutableVector2i pos) {
+        return markers.get(TileKeys.pack(pos.getX(), pos.getY())) != null;
+    }
+
+    /**
+     * @param pos the tile position
+     * @return true if the tile was marked as stale
+     */
+    public synchronized boolean remove(ImmutableVector2i pos) {
+        return markers.remove(TileKeys.pack(pos.getX(), pos.getY())) != null;
+    }
+
+    /**
+     * Marks a stale tile as requested for the given epoch.
+     * @param x the tile x coord.
+     * @param y the tile y coord.
+     * @param epoch the current epoch
+     * @return the tile position or <code>null</code> if the tile is up to date or requested for that epoch already
+     */
+    public synchronized ImmutableVector2i request(int x, int y, Object epoch) {
+        Marker marker = markers.get(TileKeys.pack(x, y));
+        if (marker == null || marker.requested == epoch) {
+            return null;
+        }
+        marker.requested = epoch;
+        return marker.pos;
+    }
+
+    /**
+     * Lets the tile be requested again, e.g. after its task was cancelled
+     * @param pos the tile position
+     */
+    public synchronized void retry(ImmutableVector2i pos) {
+        Marker marker = markers.get(TileKeys.pack(pos.getX(), pos.getY()));
+        if (marker != null) {
+            marker.requested = null;
+        }
+    }
+
+    public synchronized void clear() {
+        markers = new TileIndex<>(0);
+    }
+
+    public synchronized boolean isEmpty() {
+        return markers.size() == 0;
+    }
+
+    public synchronized int size() {
+        return markers.size();
+    }
+
+    private static final class Marker {
+        private final ImmutableVector2i pos;
+        private Object requested;
+
+        Marker(ImmutableVector2i pos) {
+            this.pos = pos;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Lets tiles with identical pixels share the same image. Large areas of a world (e.g. open ocean)
+ * are rendered into identical tiles, so only one copy needs to be kept in memory. Every interned
+ * image is reference-counted and forgotten once the last reference is released.
+ * The interned images are weighed here, so that their size is charged as long as any reference remains.
+ * Thread-safe.
+ */
+final class TileInterner {
+
+    private final Map<Content, Content> contents = Maps.newHashMap();
+    private final Map<BufferedImage, Content> images = new IdentityHashMap<>();
+
+    private long references;
+    private long bytes;
+
+    /**
+     * Every call must be matched by a call to {@link #release(BufferedImage)} for the returned image.
+     * Images that are not backed by a single int array are returned as they are.
+     * @param image the tile image - it must not be modified afterwards
+     * @return an image with identical pixels that was interned before or the given image
+     */
+    public BufferedImage intern(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (!(buffer instanceof DataBufferInt) || buffer.getNumBanks() != 1) {
+            return image;
+        }
+
+        // hash outside of the lock
+        Content probe = new Content(image, ((DataBufferInt) buffer).getData());
+        synchronized (this) {
+            Content content = contents.get(probe);
+            if (content == null) {
+                content = probe;
+                contents.put(content, content);
+                images.put(image, content);
+                bytes += SizeEstimator.estimate(image);
+            }
+            content.refs++;
+            references++;
+            return content.image;
+        }
+    }
+
+    /**
+     * Images that were not interned are ignored.
+     * @param image the interned image
+     */
+    public synchronized void release(BufferedImage image) {
+        Content content = images.get(image);
+        if (content != null) {
+            references--;
+            if (--content.refs == 0) {
+                images.remove(image);
+                contents.remove(content);
+                bytes -= SizeEstimator.estimate(image);
+            }
+        }
+    }
+
+    /**
+     * @param image the image
+     * @return the number of references to the interned image or 0 if it was not interned
+     */
+    public synchronized int getReferences(BufferedImage image) {
+        Content content = images.get(image);
+        return (content != null) ? content.refs : 0;
+    }
+
+    /**
+     * @return the total size of all interned images in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Shared tiles: %d images for %d tiles", images.size(), references);
+    }
+
+    private static final class Content {
+        private final BufferedImage image;
+        private final int[] pixels;
+        private final int hash;
+        private int refs;
+
+        Content(BufferedImage image, int[] pixels) {
+            this.image = image;
+            this.pixels = pixels;
+            this.hash = Arrays.hashCode(pixels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Content)) {
+                return false;
+            }
+            Content other = (Content) obj;
+            return hash == other.hash
+                && image.getWidth() == other.image.getWidth()
+                && Arrays.equals(pixels, other.pixels);
+        }
+    }
+}
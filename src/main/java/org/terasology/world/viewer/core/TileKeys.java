@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+/**
+ * Packs tile coordinates into a single primitive <code>long</code>, so that tiles can be
+ * looked up without creating key objects.
+ */
+final class TileKeys {
+
+    private TileKeys() {
+        // no instances
+    }
+
+    /**
+     * @param x the tile x coord.
+     * @param y the tile y coord.
+     * @return the packed key
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
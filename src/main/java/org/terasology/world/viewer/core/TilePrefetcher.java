@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.swing.Timer;
+
+import org.terasology.math.geom.ImmutableVector2f;
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.math.geom.Rect2i;
+import org.terasology.world.viewer.camera.Camera;
+import org.terasology.world.viewer.camera.CameraListener;
+
+/**
+ * Requests tiles before they become visible. While the camera is moving, the tiles
+ * that the visible area is about to reach are requested based on the estimated pan velocity.
+ * When no tiles are pending, a ring of tiles around the visible area is requested.
+ * Both are measured in tiles of the current pyramid level, since a tile of level n covers
+ * 2^n x 2^n base tiles. The requests are issued nearest first and capped per event,
+ * so zooming out doesn't flood the scheduler. Tiles that are cached already are skipped.
+ * Tiles outside the visible area are run with low priority by the {@link TileScheduler}.
+ */
+class TilePrefetcher implements CameraListener {
+
+    /**
+     * Camera movements that are further apart are not considered continuous
+     */
+    private static final long MAX_SAMPLE_GAP_NANOS = 200_000_000L;
+
+    /**
+     * How far (in seconds) the camera movement is extrapolated
+     */
+    private static final float LOOKAHEAD = 0.5f;
+
+    /**
+     * The weight of a new velocity sample (exponential smoothing)
+     */
+    private static final float SMOOTHING = 0.5f;
+
+    /**
+     * The maximum number of base tiles that are requested per camera movement or timer event
+     */
+    private static final int MAX_REQUESTS = 64;
+
+    private final Camera camera;
+    private final Supplier<Rect2i> visibleTiles;
+    private final IntSupplier pyramidLevel;
+    private final IntSupplier pendingTiles;
+    private final Predicate<ImmutableVector2i> cachedTiles;
+    private final Consumer<ImmutableVector2i> requestTile;
+    private final Timer idleTimer;
+
+    private final int tileSizeX;
+    private final int tileSizeY;
+    private int ringWidth;
+
+    private ImmutableVector2f lastPos;
+    private long lastTime;
+    private float velX;
+    private float velY;
+
+    /**
+     * @param camera the camera to observe
+     * @param tileSizeX the tile width in world coords.
+     * @param tileSizeY the tile height in world coords.
+     * @param visibleTiles provides the visible area in tile coords.
+     * @param pyramidLevel provides the pyramid level that is displayed
+     * @param pendingTiles provides the number of pending tile tasks
+     * @param cachedTiles tests whether a tile is cached (without changing the eviction order)
+     * @param requestTile requests a tile (if not available already)
+     */
+    TilePrefetcher(Camera camera, int tileSizeX, int tileSizeY, Supplier<Rect2i> visibleTiles, IntSupplier pyramidLevel,
+            IntSupplier pendingTiles, Predicate<ImmutableVector2i> cachedTiles, Consumer<ImmutableVector2i> requestTile) {
+        this.camera = camera;
+        this.tileSizeX = tileSizeX;
+        this.tileSizeY = tileSizeY;
+        this.visibleTiles = visibleTiles;
+        this.pyramidLevel = pyramidLevel;
+        this.pendingTiles = pendingTiles;
+        this.cachedTiles = cachedTiles;
+        this.requestTile = requestTile;
+
+        this.lastPos = camera.getPos();
+        this.lastTime = System.nanoTime();
+
+        idleTimer = new Timer(250, e -> fillRing());
+    }
+
+    /**
+     * @param width the width of the ring around the visible area in tiles of the displayed level (0 to disable)
+     */
+    public void setRingWidth(int width) {
+        this.ringWidth = width;
+    }
+
+    public int getRingWidth() {
+        return ringWidth;
+    }
+
+    public void start() {
+        idleTimer.start();
+    }
+
+    public void stop() {
+        idleTimer.stop();
+    }
+
+    @Override
+    public void onPosChange() {
+        ImmutableVector2f pos = camera.getPos();
+        long time = System.nanoTime();
+        long dt = time - lastTime;
+
+        if (dt > MAX_SAMPLE_GAP_NANOS) {
+            // a new movement starts - the last known velocity is no longer valid
+            velX = 0;
+            velY = 0;
+        } else if (dt > 0) {
+            float sec = dt * 1e-9f;
+            velX = velX * (1 - SMOOTHING) + (pos.getX() - lastPos.getX()) / sec * SMOOTHING;
+            velY = velY * (1 - SMOOTHING) + (pos.getY() - lastPos.getY()) / sec * SMOOTHING;
+        }
+
+        lastPos = pos;
+        lastTime = time;
+
+        prefetchAhead();
+    }
+
+    @Override
+    public void onZoomChange() {
+        // the zoom center usually moves, but that is not a pan movement
+        velX = 0;
+        velY = 0;
+        lastPos = camera.getPos();
+        lastTime = System.nanoTime();
+    }
+
+    private void prefetchAhead() {
+        int scale = 1 << pyramidLevel.getAsInt();
+        Rect2i visTiles = align(visibleTiles.get(), scale);
+
+        // don't look further ahead than one screen
+        float maxX = visTiles.width() * tileSizeX;
+        float maxY = visTiles.height() * tileSizeY;
+        float aheadX = Math.max(-maxX, Math.min(maxX, velX * LOOKAHEAD));
+        float aheadY = Math.max(-maxY, Math.min(maxY, velY * LOOKAHEAD));
+
+        // a pyramid tile can only be built once all its base tiles are available
+        int dx = Math.round(aheadX / (tileSizeX * scale)) * scale;
+        int dy = Math.round(aheadY / (tileSizeY * scale)) * scale;
+
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+
+        Rect2i predicted = Rect2i.createFromMinAndMax(
+                Math.min(visTiles.minX(), visTiles.minX() + dx), Math.min(visTiles.minY(), visTiles.minY() + dy),
+                Math.max(visTiles.maxX(), visTiles.maxX() + dx), Math.max(visTiles.maxY(), visTiles.maxY() + dy));
+
+        request(predicted, visTiles);
+    }
+
+    private void fillRing() {
+        if (ringWidth <= 0 || pendingTiles.getAsInt() > 0) {
+            return;
+        }
+
+        int scale = 1 << pyramidLevel.getAsInt();
+        Rect2i visTiles = align(visibleTiles.get(), scale);
+        int width = ringWidth * scale;
+        Rect2i ring = Rect2i.createFromMinAndMax(
+                visTiles.minX() - width, visTiles.minY() - width,
+                visTiles.maxX() + width, visTiles.maxY() + width);
+
+        request(ring, visTiles);
+    }
+
+    /**
+     * @param area an area in base tile coords.
+     * @param scale the number of base tiles per pyramid tile in x and y direction
+     * @return the area of all pyramid tiles that overlap the given area (in base tile coords.)
+     */
+    private static Rect2i align(Rect2i area, int scale) {
+        return Rect2i.createFromMinAndMax(
+                Math.floorDiv(area.minX(), scale) * scale, Math.floorDiv(area.minY(), scale) * scale,
+                Math.floorDiv(area.maxX(), scale) * scale + scale - 1, Math.floorDiv(area.maxY(), scale) * scale + scale - 1);
+    }
+
+    /**
+     * Requests the missing tiles of the area in rings around the excluded area, nearest first.
+     * @param area the area to request
+     * @param exclude the area that is requested anyway (must be inside the area)
+     */
+    private void request(Rect2i area, Rect2i exclude) {
+        int maxDist = Math.max(Math.max(exclude.minX() - area.minX(), area.maxX() - exclude.maxX()),
+                Math.max(exclude.minY() - area.minY(), area.maxY() - exclude.maxY()));
+        int count = 0;
+        for (int dist = 1; dist <= maxDist; dist++) {
+            int minX = exclude.minX() - dist;
+            int maxX = exclude.maxX() + dist;
+            int minY = exclude.minY() - dist;
+            int maxY = exclude.maxY() + dist;
+            for (int y = minY; y <= maxY; y++) {
+                // only the first and the last row are complete, the others consist of two tiles
+                int step = (y == minY || y == maxY) ? 1 : maxX - minX;
+                for (int x = minX; x <= maxX; x += step) {
+                    if (x < area.minX() || x > area.maxX() || y < area.minY() || y > area.maxY()) {
+                        continue;
+                    }
+                    ImmutableVector2i pos = new ImmutableVector2i(x, y);
+                    if (!cachedTiles.test(pos)) {
+                        requestTile.accept(pos);
+                        if (++count >= MAX_REQUESTS) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.terasology.math.geom.ImmutableVector2i;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A mip-map style pyramid of downsampled tiles. Level 0 contains the full-resolution tiles,
+ * every tile on level n + 1 covers 2x2 tiles of level n at half the resolution.
+ * Tiles of higher levels are built lazily from their four children once all of them are finished.
+ * <p>
+ * After {@link #markAllStale()}, existing tiles are kept and returned until they can be rebuilt.
+ * Tiles that were built from at least one stale child are stale as well.
+ * <p>
+ * {@link #getTile(int, int, int)} and {@link #isStale(int, int, int)} are called for every visible tile
+ * in every frame, so they don't allocate anything once the tile is known.
+ * All methods must be called on the UI thread, since a rebuilt tile would otherwise
+ * overwrite the outdated flag that was set while its children were read.
+ */
+final class TilePyramid {
+
+    private final int tileSizeX;
+    private final int tileSizeY;
+
+    /**
+     * Returns the finished base tile or <code>null</code> if it is not available (yet).
+     */
+    private final Function<ImmutableVector2i, BufferedImage> baseTiles;
+
+    /**
+     * Tests whether a base tile is outdated
+     */
+    private final Predicate<ImmutableVector2i> staleBaseTiles;
+
+    /**
+     * The cache for level n is stored at index n - 1
+     */
+    private final List<WeightedCache<ImmutableVector2i, PyramidTile>> levels;
+
+    /**
+     * The tile keys of level n are stored at index n - they are reused for all lookups
+     */
+    private final List<TileIndex<ImmutableVector2i>> keys;
+    private final int maxKeys;
+
+    /**
+     * @param tileSizeX the width of a single tile in pixels
+     * @param tileSizeY the height of a single tile in pixels
+     * @param maxLevel the highest pyramid level (0 means full-resolution tiles only)
+     * @param cacheSize the maximum number of cached tiles per level
+     * @param baseTiles provides finished tiles of level 0 or <code>null</code> if not available
+     * @param staleBaseTiles tests whether a base tile is outdated
+     */
+    TilePyramid(int tileSizeX, int tileSizeY, int maxLevel, int cacheSize,
+            Function<ImmutableVector2i, BufferedImage> baseTiles, Predicate<ImmutableVector2i> staleBaseTiles) {
+        this.tileSizeX = tileSizeX;
+        this.tileSizeY = tileSizeY;
+        this.baseTiles = baseTiles;
+        this.staleBaseTiles = staleBaseTiles;
+        this.levels = Lists.newArrayListWithCapacity(maxLevel);
+        this.keys = Lists.newArrayListWithCapacity(maxLevel + 1);
+        this.maxKeys = cacheSize * 4;
+
+        // Guava caches record every read in a queue - these caches don't allocate on a hit
+        for (int i = 0; i < maxLevel; i++) {
+            levels.add(new WeightedCache<>("Pyramid level " + (i + 1), cacheSize, tile -> 1));
+        }
+        for (int i = 0; i <= maxLevel; i++) {
+            keys.add(new TileIndex<>(cacheSize));
+        }
+    }
+
+    /**
+     * @return the highest available level
+     */
+    public int getMaxLevel() {
+        return levels.size();
+    }
+
+    /**
+     * @param zoom the camera zoom factor
+     * @return the level whose resolution is closest to (but not lower than) the screen resolution
+     */
+    public int getLevelFor(float zoom) {
+        int level = 0;
+        float scale = zoom;
+        while (scale <= 0.5f && level < getMaxLevel()) {
+            scale *= 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param x the tile x coord. on that level
+     * @param y the tile y coord. on that level
+     * @return the tile image or <code>null</code> if not all base tiles that are covered are finished
+     */
+    public BufferedImage getTile(int level, int x, int y) {
+        ImmutableVector2i pos = getKey(level, x, y);
+        if (level == 0) {
+            return baseTiles.apply(pos);
+        }
+
+        WeightedCache<ImmutableVector2i, PyramidTile> cache = levels.get(level - 1);
+        PyramidTile tile = cache.getIfPresent(pos);
+        if (tile != null && !tile.outdated) {
+            return tile.image;
+        }
+
+        // query all children first so that missing base tiles are requested in one go
+        BufferedImage img00 = getTile(level - 1, x * 2, y * 2);
+        BufferedImage img10 = getTile(level - 1, x * 2 + 1, y * 2);
+        BufferedImage img01 = getTile(level - 1, x * 2, y * 2 + 1);
+        BufferedImage img11 = getTile(level - 1, x * 2 + 1, y * 2 + 1);
+
+        if (img00 == null || img10 == null || img01 == null || img11 == null) {
+            // keep the outdated version (if available) until it can be rebuilt
+            return (tile != null) ? tile.image : null;
+        }
+
+        boolean stale = isStale(level - 1, x * 2, y * 2) || isStale(level - 1, x * 2 + 1, y * 2)
+                || isStale(level - 1, x * 2, y * 2 + 1) || isStale(level - 1, x * 2 + 1, y * 2 + 1);
+
+        BufferedImage image = downsample(img00, img10, img01, img11);
+        cache.put(pos, new PyramidTile(image, stale));
+        return image;
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param x the tile x coord. on that level
+     * @param y the tile y coord. on that level
+     * @return true if the tile is outdated or if it was built from outdated tiles
+     */
+    public boolean isStale(int level, int x, int y) {
+        ImmutableVector2i pos = getKey(level, x, y);
+        if (level == 0) {
+            return staleBaseTiles.test(pos);
+        }
+
+        PyramidTile tile = levels.get(level - 1).getIfPresent(pos);
+        return tile != null && tile.stale;
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param x the tile x coord. on that level
+     * @param y the tile y coord. on that level
+     * @return the key object that is used for this tile
+     */
+    private ImmutableVector2i getKey(int level, int x, int y) {
+        TileIndex<ImmutableVector2i> index = keys.get(level);
+        long packed = TileKeys.pack(x, y);
+        ImmutableVector2i pos = index.get(packed);
+        if (pos == null) {
+            if (index.size() >= maxKeys) {
+                // the keys are cheap to re-create, so there is no need for an LRU order
+                index.clear();
+            }
+            pos = new ImmutableVector2i(x, y);
+            index.put(packed, pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Marks all tiles as outdated. They are rebuilt as soon as all their children are available,
+     * but will be returned until then.
+     */
+    public void markAllStale() {
+        for (WeightedCache<ImmutableVector2i, PyramidTile> cache : levels) {
+            for (PyramidTile tile : cache.snapshot().values()) {
+                tile.stale = true;
+                tile.outdated = true;
+            }
+        }
+    }
+
+    /**
+     * Marks all tiles that were built from the given base tile as outdated
+     * @param basePos the position of the base tile (level 0)
+     */
+    public void invalidate(ImmutableVector2i basePos) {
+        for (int level = 1; level <= getMaxLevel(); level++) {
+            // arithmetic shift rounds towards negative infinity, just like the tile coords.
+            ImmutableVector2i pos = new ImmutableVector2i(basePos.getX() >> level, basePos.getY() >> level);
+            PyramidTile tile = levels.get(level - 1).getIfPresent(pos);
+            if (tile != null) {
+                tile.outdated = true;
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (WeightedCache<ImmutableVector2i, PyramidTile> cache : levels) {
+            cache.invalidateAll();
+        }
+    }
+
+    private BufferedImage downsample(BufferedImage img00, BufferedImage img10, BufferedImage img01, BufferedImage img11) {
+        int halfX = tileSizeX / 2;
+        int halfY = tileSizeY / 2;
+
+        BufferedImage image = new BufferedImage(tileSizeX, tileSizeY, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            // bi-linear filtering at exactly 50% averages 2x2 pixel blocks
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(img00, 0, 0, halfX, halfY, null);
+            g.drawImage(img10, halfX, 0, halfX, halfY, null);
+            g.drawImage(img01, 0, halfY, halfX, halfY, null);
+            g.drawImage(img11, halfX, halfY, halfX, halfY, null);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static final class PyramidTile {
+
+        private final BufferedImage image;
+
+        /**
+         * Built from at least one outdated child
+         */
+        private volatile boolean stale;
+
+        /**
+         * Must be rebuilt from its children
+         */
+        private volatile boolean outdated;
+
+        PyramidTile(BufferedImage image, boolean stale) {
+            this.image = image;
+            this.stale = stale;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.math.geom.Rect2i;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Runs {@link TileTask}s on a thread pool with a bounded queue. There is at most one task per tile position:
+ * requests for a tile that is already scheduled with the same version are ignored,
+ * requests with a different version supersede (and cancel) the existing task.
+ * Tasks for visible tiles always run first.
+ * Pending tasks are ordered by the distance of their tile to the center of the
+ * visible area and to the cursor, whichever is smaller.
+ * Whenever the visible area changes, pending tasks are re-ranked and those that are
+ * far outside the visible area are dropped. If the queue is full, the task with the
+ * lowest priority is dropped.
+ * <p>
+ * Tasks that are in progress are only interrupted if the scheduler was created
+ * as interruptible. Otherwise, they run to completion and only their result is discarded.
+ */
+final class TileScheduler {
+
+    /**
+     * Added to the rank of tiles outside the visible area
+     */
+    private static final double OFFSCREEN_PENALTY = 1e9;
+
+    private final String name;
+    private final boolean interruptible;
+    private final BoundedPriorityQueue<Runnable> queue;
+    private final ThreadPoolExecutor threadPool;
+    private final TileThreadFactory threadFactory;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong busyTime = new AtomicLong();
+
+    /**
+     * Contains both queued tasks and those that are in progress.
+     */
+    private final ConcurrentMap<ImmutableVector2i, TileTask<?>> inFlight;
+
+    private volatile Rect2i visTiles = Rect2i.createFromMinAndSize(0, 0, 1, 1);
+    private volatile ImmutableVector2i cursorTile;
+
+    /**
+     * @param name the name of the stage (also used for the worker threads)
+     * @param threads the number of worker threads
+     * @param capacity the maximum number of queued tasks
+     * @param interruptible true if cancelled tasks that are in progress should be interrupted
+     */
+    TileScheduler(String name, int threads, int capacity, boolean interruptible) {
+        this.name = name;
+        this.interruptible = interruptible;
+        // the queue drops the task with the lowest priority on insert, so it never exceeds the capacity
+        queue = new BoundedPriorityQueue<>(capacity, (r1, r2) -> ((TileTask<?>) r1).compareTo((TileTask<?>) r2),
+                r -> ((TileTask<?>) r).cancel(false));
+        threadFactory = new TileThreadFactory(name);
+        threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, threadFactory);
+        inFlight = new ConcurrentHashMap<>(capacity);
+    }
+
+    /**
+     * Runs the given task, unless an equivalent task for the same tile is already queued or in progress.
+     * An existing task with a different version is cancelled.
+     * @param task the task to run
+     * @return true if the task was scheduled, false if an equivalent task exists already
+     */
+    public boolean execute(TileTask<?> task) {
+        ImmutableVector2i pos = task.getPos();
+        task.setDoneListener(this::onDone);
+        task.setPriority(rank(pos));
+
+        while (true) {
+            TileTask<?> existing = inFlight.putIfAbsent(pos, task);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.isDone() && existing.getVersion().equals(task.getVersion())) {
+                return false;
+            }
+            if (inFlight.replace(pos, existing, task)) {
+                // the result of the existing task is outdated
+                existing.cancel(interruptible);
+                break;
+            }
+        }
+
+        threadPool.execute(task);
+        return true;
+    }
+
+    private void onDone(TileTask<?> task) {
+        inFlight.remove(task.getPos(), task);
+        if (task.isCancelled()) {
+            cancelled.incrementAndGet();
+        } else {
+            busyTime.addAndGet(System.nanoTime() - task.getStartTime());
+            completed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Changes the number of worker threads. Surplus threads terminate once they become idle.
+     * @param threads the new number of worker threads
+     */
+    void setPoolSize(int threads) {
+        // the core size must never exceed the maximum size
+        if (threads > threadPool.getMaximumPoolSize()) {
+            threadPool.setMaximumPoolSize(threads);
+            threadPool.setCorePoolSize(threads);
+        } else {
+            threadPool.setCorePoolSize(threads);
+            threadPool.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * @return the target number of worker threads
+     */
+    int getPoolSize() {
+        return threadPool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the total number of completed (not cancelled) tasks
+     */
+    long getCompletedTasks() {
+        return completed.get();
+    }
+
+    /**
+     * @return the ids of all live worker threads
+     */
+    long[] getWorkerThreadIds() {
+        return threadFactory.getLiveThreadIds();
+    }
+
+    /**
+     * @return a snapshot of the current queue metrics
+     */
+    public StageMetrics getMetrics() {
+        long done = completed.get();
+        double avgMillis = (done > 0) ? busyTime.get() / (done * 1e6) : 0;
+        return new StageMetrics(name, threadPool.getMaximumPoolSize(), threadPool.getActiveCount(), queue.size(),
+                done, cancelled.get(), avgMillis);
+    }
+
+    /**
+     * @param pos the tile position
+     * @param version the version of the input data
+     * @return true if a task for that tile and version is queued or in progress
+     */
+    public boolean isScheduled(ImmutableVector2i pos, Object version) {
+        TileTask<?> task = inFlight.get(pos);
+        return task != null && task.getVersion().equals(version);
+    }
+
+    /**
+     * @return the number of tasks that are queued or in progress
+     */
+    public int getPendingTasks() {
+        return inFlight.size();
+    }
+
+    /**
+     * Cancels all queued tasks and those that are in progress (interrupting them, if interruptible).
+     */
+    public void cancelAll() {
+        for (TileTask<?> task : inFlight.values()) {
+            task.cancel(interruptible);
+        }
+    }
+
+    /**
+     * Re-ranks all queued tasks and drops those that are more than one screen
+     * (in both directions) away from the visible area. Does nothing if neither the
+     * visible area nor the cursor tile has changed since the last call.
+     * Must be called from a single thread only (usually the EDT).
+     * @param newVisTiles the visible area in tile coordinates
+     * @param newCursorTile the tile under the cursor or <code>null</code>
+     */
+    public void reprioritize(Rect2i newVisTiles, ImmutableVector2i newCursorTile) {
+        if (newVisTiles.equals(visTiles) && Objects.equals(newCursorTile, cursorTile)) {
+            return;
+        }
+
+        visTiles = newVisTiles;
+        cursorTile = newCursorTile;
+
+        int marginX = visTiles.width();
+        int marginY = visTiles.height();
+        Rect2i keepArea = Rect2i.createFromMinAndMax(
+                visTiles.minX() - marginX, visTiles.minY() - marginY,
+                visTiles.maxX() + marginX, visTiles.maxY() + marginY);
+
+        List<Runnable> pending = Lists.newArrayListWithCapacity(queue.size());
+        queue.drainTo(pending);
+
+        List<Runnable> keep = Lists.newArrayListWithCapacity(pending.size());
+        for (Runnable r : pending) {
+            TileTask<?> task = (TileTask<?>) r;
+            ImmutableVector2i pos = task.getPos();
+            if (keepArea.contains(pos)) {
+                task.setPriority(rank(pos));
+                keep.add(task);
+            } else {
+                // the task has already been removed from the queue, so it will never run
+                task.cancel(false);
+            }
+        }
+
+        queue.addAll(keep);
+    }
+
+    public void shutdown() {
+        threadPool.shutdownNow();
+    }
+
+    private double rank(ImmutableVector2i pos) {
+        Rect2i area = visTiles;
+        double cx = (area.minX() + area.maxX()) * 0.5;
+        double cy = (area.minY() + area.maxY()) * 0.5;
+        double dist = distSq(pos, cx, cy);
+
+        ImmutableVector2i cursor = cursorTile;
+        if (cursor != null) {
+            dist = Math.min(dist, distSq(pos, cursor.getX(), cursor.getY()));
+        }
+
+        if (!area.contains(pos)) {
+            dist += OFFSCREEN_PENALTY;
+        }
+
+        return dist;
+    }
+
+    private static double distSq(ImmutableVector2i pos, double x, double y) {
+        double dx = pos.getX() - x;
+        double dy = pos.getY() - y;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.geom.ImmutableVector2i;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Stores the pixels of tile images outside of the Java heap, either in direct buffers or in a
+ * memory-mapped temporary file. The store consists of fixed-size slots that are allocated in segments
+ * on demand. If all slots are in use, the least recently used tile is dropped.
+ * Tiles are copied in and out in bulk, so no object per tile remains on the heap except for the index entry.
+ * Thread-safe.
+ */
+final class TileStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileStore.class);
+
+    /**
+     * The size of a segment is limited to 2GB by the NIO API - this keeps it well below
+     */
+    private static final int SLOTS_PER_SEGMENT = 256;
+
+    private final int width;
+    private final int height;
+    private final int capacity;
+
+    private final IntBuffer[] segments;
+    private final FileChannel channel;
+    private final File file;
+
+    /**
+     * Maps every stored tile to its slot (in LRU order)
+     */
+    private final LinkedHashMap<ImmutableVector2i, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private int[] freeSlots;
+    private int freeCount;
+    private int allocated;
+
+    /**
+     * @param width the tile width in pixels
+     * @param height the tile height in pixels
+     * @param capacity the maximum number of tiles
+     * @param mapped true to use a memory-mapped temporary file, false to use direct buffers
+     * @throws IOException if the temporary file could not be created
+     */
+    TileStore(int width, int height, int capacity, boolean mapped) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.capacity = capacity;
+        this.segments = new IntBuffer[(capacity + SLOTS_PER_SEGMENT - 1) / SLOTS_PER_SEGMENT];
+        this.freeSlots = new int[0];
+
+        if (mapped) {
+            file = File.createTempFile("tiles", ".bin");
+            file.deleteOnExit();
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        } else {
+            file = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Copies the pixels of the image into the store. The image must have the tile size
+     * and must be backed by a single int array (such as TYPE_INT_ARGB).
+     * @param pos the tile position
+     * @param image the image to store
+     */
+    public void put(ImmutableVector2i pos, BufferedImage image) {
+        put(pos, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+    }
+
+    /**
+     * Copies the pixels into the store.
+     * @param pos the tile position
+     * @param pixels the ARGB values of the tile
+     */
+    public synchronized void put(ImmutableVector2i pos, int[] pixels) {
+        Integer slot = slots.get(pos);
+        if (slot == null) {
+            slot = allocateSlot();
+            if (slot < 0) {
+                return;
+            }
+            slots.put(pos, slot);
+        }
+        IntBuffer buffer = seek(slot);
+        buffer.put(pixels, 0, width * height);
+    }
+
+    /**
+     * @param pos the tile position
+     * @param imageFactory creates an empty image of the tile size that is backed by a single int array
+     * @return a new on-heap copy of the tile or <code>null</code> if it is not stored
+     */
+    public synchronized BufferedImage get(ImmutableVector2i pos, Supplier<BufferedImage> imageFactory) {
+        Integer slot = slots.get(pos);
+        if (slot == null) {
+            return null;
+        }
+        BufferedImage image = imageFactory.get();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        IntBuffer buffer = seek(slot);
+        buffer.get(pixels, 0, width * height);
+        return image;
+    }
+
+    public synchronized boolean contains(ImmutableVector2i pos) {
+        return slots.containsKey(pos);
+    }
+
+    /**
+     * @return an immutable copy of the stored tile positions
+     */
+    public synchronized Collection<ImmutableVector2i> getTiles() {
+        return ImmutableList.copyOf(slots.keySet());
+    }
+
+    public synchronized void remove(ImmutableVector2i pos) {
+        Integer slot = slots.remove(pos);
+        if (slot != null) {
+            release(slot);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Integer slot : slots.values()) {
+            release(slot);
+        }
+        slots.clear();
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Releases the temporary file. Direct buffers are released by the garbage collector.
+     */
+    public synchronized void close() {
+        slots.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Could not close tile store {}", file, e);
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (allocated < capacity) {
+            return allocated++;
+        }
+        // drop the least recently used tile
+        Iterator<Map.Entry<ImmutableVector2i, Integer>> it = slots.entrySet().iterator();
+        if (!it.hasNext()) {
+            return -1;
+        }
+        int slot = it.next().getValue();
+        it.remove();
+        return slot;
+    }
+
+    private void release(int slot) {
+        if (freeCount == freeSlots.length) {
+            int[] grown = new int[Math.max(16, freeSlots.length * 2)];
+            System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+            freeSlots = grown;
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private IntBuffer seek(int slot) {
+        int index = slot / SLOTS_PER_SEGMENT;
+        IntBuffer segment = segments[index];
+        if (segment == null) {
+            segment = createSegment(index);
+            segments[index] = segment;
+        }
+        segment.position((slot % SLOTS_PER_SEGMENT) * width * height);
+        return segment;
+    }
+
+    private IntBuffer createSegment(int index) {
+        long bytes = (long) SLOTS_PER_SEGMENT * width * height * Integer.BYTES;
+        ByteBuffer buffer;
+        if (channel != null) {
+            try {
+                buffer = channel.map(MapMode.READ_WRITE, index * bytes, bytes);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not map segment " + index + " of " + file, e);
+            }
+        } else {
+            buffer = ByteBuffer.allocateDirect((int) bytes);
+        }
+        return buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long mb = (long) allocated * width * height * Integer.BYTES >> 20;
+        return String.format("Off-heap tiles: %d/%d, %d MB %s", slots.size(), capacity, mb, (channel != null) ? "mapped" : "direct");
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.terasology.math.geom.ImmutableVector2i;
+
+/**
+ * A task that computes something for a single tile. Tasks with a lower priority value
+ * are run first, tasks with equal priority are run in the order of their creation.
+ * Two tasks for the same tile with equal versions compute the same result.
+ * @param <V> the result type
+ */
+class TileTask<V> extends FutureTask<V> implements Comparable<TileTask<?>> {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final ImmutableVector2i pos;
+    private final Object version;
+    private final long seqNum = SEQUENCE.getAndIncrement();
+
+    private volatile double priority;
+    private volatile long startTime;
+
+    private volatile Consumer<? super TileTask<V>> doneListener = task -> { };
+
+    /**
+     * @param pos the tile position
+     * @param version identifies the input data (e.g. the {@link RenderEpoch})
+     * @param callable the actual computation
+     */
+    TileTask(ImmutableVector2i pos, Object version, Callable<V> callable) {
+        super(callable);
+        this.pos = pos;
+        this.version = version;
+    }
+
+    public ImmutableVector2i getPos() {
+        return pos;
+    }
+
+    /**
+     * @return the version of the input data
+     */
+    public Object getVersion() {
+        return version;
+    }
+
+    public double getPriority() {
+        return priority;
+    }
+
+    /**
+     * Note that changing the priority of a queued task does not re-order the queue.
+     * @param priority the new priority (lower values are run first)
+     */
+    void setPriority(double priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the time when the task was started (in nanoseconds) or 0 if it never ran
+     */
+    long getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public void run() {
+        startTime = System.nanoTime();
+        super.run();
+    }
+
+    void setDoneListener(Consumer<? super TileTask<V>> listener) {
+        this.doneListener = listener;
+    }
+
+    /**
+     * Subclasses must call this method when overriding.
+     */
+    @Override
+    protected void done() {
+        doneListener.accept(this);
+    }
+
+    @Override
+    public int compareTo(TileTask<?> other) {
+        int cmp = Double.compare(priority, other.priority);
+        if (cmp == 0) {
+            cmp = Long.compare(seqNum, other.seqNum);
+        }
+        return cmp;
+    }
+
+    @Override
+    public String toString() {
+        return "TileTask [" + pos + ", priority " + priority + "]";
+    }
+}
@@ -16,22 +16,46 @@
 
 package org.terasology.world.viewer.core;
 
+import java.util.Set;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.collect.Sets;
+
 /**
  * Creates daemon threads with low thread priority.
  */
 class TileThreadFactory implements ThreadFactory {
 
     private final AtomicInteger threadNumber = new AtomicInteger(1);
-    private final String namePrefix = "TileThreadPool-thread-";
+    private final String namePrefix;
+    private final Set<Thread> threads = Sets.newConcurrentHashSet();
+
+    TileThreadFactory() {
+        this("TileThreadPool");
+    }
+
+    /**
+     * @param poolName the name of the thread pool
+     */
+    TileThreadFactory(String poolName) {
+        this.namePrefix = poolName + "-thread-";
+    }
 
     @Override
     public Thread newThread(Runnable r) {
         Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
         t.setDaemon(true);
         t.setPriority(Thread.MIN_PRIORITY);
+        threads.add(t);
         return t;
     }
+
+    /**
+     * @return the ids of all threads that were created by this factory and are still alive
+     */
+    long[] getLiveThreadIds() {
+        threads.removeIf(t -> t.getState() == Thread.State.TERMINATED);
+        return threads.stream().mapToLong(Thread::getId).toArray();
+    }
 }
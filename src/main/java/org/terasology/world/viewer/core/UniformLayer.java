@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.OptionalInt;
+
+import org.terasology.world.generation.Region;
+import org.terasology.world.viewer.layers.FacetLayer;
+
+/**
+ * A {@link FacetLayer} that can tell in advance whether a region is rendered in a single color,
+ * for example because it is entirely covered by ocean. Such regions are filled instead of being rendered.
+ */
+public interface UniformLayer extends FacetLayer {
+
+    /**
+     * Must be much cheaper than rendering the region.
+     * @param region the region to render
+     * @return the ARGB value of all pixels if the region is known to be uniform, otherwise empty
+     */
+    OptionalInt getUniformColor(Region region);
+}
@@ -32,26 +32,28 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.io.IOException;
 import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Deque;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RunnableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,9 +68,12 @@ import org.terasology.rendering.nui.HorizontalAlign;
 import org.terasology.world.chunks.ChunkConstants;
 import org.terasology.world.generation.Region;
 import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.WorldFacet3D;
 import org.terasology.world.generator.WorldGenerator;
 import org.terasology.world.viewer.ThreadSafeRegion;
 import org.terasology.world.viewer.camera.Camera;
+import org.terasology.world.viewer.camera.CameraListener;
 import org.terasology.world.viewer.camera.CameraKeyController;
 import org.terasology.world.viewer.camera.CameraMouseController;
 import org.terasology.world.viewer.camera.RepaintingCameraListener;
@@ -86,12 +91,16 @@ import org.terasology.world.viewer.overlay.TooltipOverlay;
 import org.terasology.world.viewer.overlay.WorldOverlay;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.math.IntMath;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
  * The main viewer component
@@ -103,19 +112,135 @@ public final class Viewer extends JComponent {
     private static final int TILE_SIZE_X = ChunkConstants.SIZE_X * 4;
     private static final int TILE_SIZE_Y = ChunkConstants.SIZE_Z * 4;
 
+    /**
+     * The height of regions that contain 3D facets - 4 chunks high (relevant for trees, etc)
+     */
+    private static final int COLUMN_HEIGHT = ChunkConstants.SIZE_Y * 4;
+
+    /**
+     * The height of regions that contain only 2D facets
+     */
+    private static final int FLAT_HEIGHT = 1;
+
+    /**
+     * The possible edge lengths of region batches (in tiles)
+     */
+    private static final int[] BATCH_SIZES = {1, 2, 4};
+
+    /**
+     * The highest level of the tile pyramid - at 12.5% zoom one tile pixel maps to one screen pixel
+     */
+    private static final int MAX_PYRAMID_LEVEL = 3;
+
+    /**
+     * Changes that follow each other within this time are rendered as a preview.
+     * The full render starts once no change occurred for this time.
+     */
+    private static final int PREVIEW_MILLIS = 500;
+
+    /**
+     * Evicted images that wait for being packed are not charged to any cache - beyond this number, they are dropped
+     */
+    private static final int MAX_PENDING_DEMOTIONS = 256;
+
+    /**
+     * The number of recent world configurations whose cached data can be restored
+     */
+    private static final int MAX_CONFIG_STATES = 8;
+
+    /**
+     * The per-entry overhead of placeholders and cache entries in bytes
+     */
+    private static final int ENTRY_BYTES = 64;
+
     private static final long serialVersionUID = 4178713176841691478L;
 
+    private static final Color STALE_TILE_HINT = new Color(64, 64, 64, 96);
+
     private final BufferedImage dummyImg;
     private final BufferedImage failedImg;
 
     /**
-     * Contains both queued tasks and those that are in progress.
+     * Generates the world regions (CPU-heavy, independent of the facet layers)
+     */
+    private final TileScheduler regionScheduler;
+
+    /**
+     * Rasterizes cached regions using the visible facet layers
+     */
+    private final TileScheduler rasterScheduler;
+
+    private final PoolController poolController;
+
+    private final TilePrefetcher prefetcher;
+
+    /**
+     * Maps every tile to the batch that contains its region
+     */
+    private final WeightedCache<ImmutableVector2i, RegionBatch> regionCache;
+    private final WeightedCache<ImmutableVector2i, BufferedImage> imageCache;
+
+    /**
+     * Tiles in the image cache with identical pixels share the same image
+     */
+    private final TileInterner interner = new TileInterner();
+
+    /**
+     * Created only once, since every method reference is a new object
+     */
+    private final Function<ImmutableVector2i, BufferedImage> tileLoader = this::loadTile;
+
+    /**
+     * The compact form of tile images that were evicted from the image cache
+     */
+    private final WeightedCache<ImmutableVector2i, PackedTile> packedCache;
+
+    /**
+     * Evicted images that are about to be packed. Evictions happen while the image cache is locked,
+     * often on the UI thread, so the images are packed in the background.
+     */
+    private final ConcurrentMap<ImmutableVector2i, BufferedImage> pendingDemotions = new ConcurrentHashMap<>();
+    private final ExecutorService packer = Executors.newSingleThreadExecutor(new TileThreadFactory("TilePacker"));
+
+    /**
+     * Keeps the pixels of tile images that were evicted from the packed cache (or could not be packed)
+     * outside of the heap or <code>null</code> if disabled
      */
-    private final Collection<Future<BufferedImage>> taskList;
-    private final ThreadPoolExecutor threadPool;
+    private final TileStore tileStore;
 
-    private final LoadingCache<ImmutableVector2i, Region> regionCache;
-    private final LoadingCache<ImmutableVector2i, BufferedImage> imageCache;
+    /**
+     * The rasters of the individual layers that the tile images are composed of
+     */
+    private final WeightedCache<LayerRasterKey, BufferedImage> layerCache;
+
+    /**
+     * Shrinks the cache budgets when the heap fills up
+     */
+    private final MemoryGuard memoryGuard;
+    private final LayerVersions layerVersions = new LayerVersions();
+
+    /**
+     * Equal configurations of the world generator share the same world version
+     */
+    private final Cache<ConfigFingerprint, Integer> worldVersions;
+    private int nextWorldVersion = 1;
+
+    /**
+     * The regions of recent world versions - restored when the configuration is restored
+     */
+    private final WeightedCache<Integer, Map<ImmutableVector2i, RegionBatch>> parkedRegions;
+    private final HaloService haloService;
+    private final TilePyramid pyramid;
+
+    /**
+     * Cached tiles whose images are outdated, but are displayed until they are replaced.
+     */
+    private final StaleTiles staleTiles = new StaleTiles();
+
+    /**
+     * Tiles that were requested while no task could be scheduled - their placeholders are removed later
+     */
+    private final Set<ImmutableVector2i> deferredTiles = Sets.newConcurrentHashSet();
 
     private final Camera camera = new Camera();
 
@@ -123,57 +248,170 @@ public final class Viewer extends JComponent {
 
     private final ViewConfig viewConfig;
 
-    private final Deque<WorldOverlay> worldOverlays = Lists.newLinkedList();
-    private final Deque<ScreenOverlay> screenOverlays = Lists.newLinkedList();
+    /**
+     * Array lists can be iterated by index - no iterator is created for every frame
+     */
+    private final List<WorldOverlay> worldOverlays = Lists.newArrayList();
+    private final List<ScreenOverlay> screenOverlays = Lists.newArrayList();
+
+    private final TextOverlay statusOverlay;
+
+    private final Timer previewTimer;
 
     private WorldGenerator worldGen;
     private List<FacetLayer> facetLayers;
 
     /**
-     * @param viewConfig the view config
-     * @param cacheSize maximum number of cached tiles
+     * Incremented on the UI thread for every initialization of the world generator -
+     * only the result of the latest one is applied. The configuration of the generator
+     * changes before the new world is applied, so region tasks that were created
+     * for an earlier request must not cache their results.
      */
-    public Viewer(ViewConfig viewConfig, int cacheSize) {
-        this.viewConfig = viewConfig;
+    private volatile int initRequest;
 
-        int minThreads = Runtime.getRuntime().availableProcessors() * 2;
-        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * The initialization request of the current world
+     */
+    private int worldRequest;
 
-        BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>(); // unlimited queue size
-        TileThreadFactory threadFactory = new TileThreadFactory();
-        threadPool = new ThreadPoolExecutor(minThreads, maxThreads, 60, TimeUnit.SECONDS, queue, threadFactory);
-        taskList = Sets.newSetFromMap(new ConcurrentHashMap<>(cacheSize)); // estimated size
+    /**
+     * True while the world generator is initialized in the background - no regions are generated in the meantime
+     */
+    private volatile boolean initializing;
 
-        CacheLoader<ImmutableVector2i, Region> regionLoader = new CacheLoader<ImmutableVector2i, Region>() {
+    /**
+     * True while the configuration is changed interactively - only cheap layers of the visible area are rendered
+     */
+    private boolean preview;
+    private long lastChangeTime;
 
-            @Override
-            public Region load(ImmutableVector2i tilePos) {
-                Region region = createRegion(tilePos);
-                return region;
-            }
-        };
+    /**
+     * The layer whose configuration was changed last - it remains visible in preview mode, even if it is expensive
+     */
+    private FacetLayer editedLayer;
+
+    /*
+     * The following values are derived for every frame on the UI thread. They are reused until their
+     * inputs change, so that painting does not create any objects in steady state.
+     */
+    private Rect2i windowRect = Rect2i.createFromMinAndSize(0, 0, 0, 0);
+    private Point cursorPoint;
+    private Rect2i cursorArea;
+    private ImmutableVector2i screenCursor;
+    private ImmutableVector2i worldCursor;
+    private int zoomPercent = -1;
+    private String zoomText;
+    private ImmutableVector2i tooltipTile;
+    private ImmutableVector2i tooltipPos;
+    private ThreadSafeRegion tooltipRegion;
+    private RenderEpoch tooltipEpoch;
+    private String tooltipText;
 
-        CacheLoader<ImmutableVector2i, BufferedImage> imageLoader = new CacheLoader<ImmutableVector2i, BufferedImage>() {
+    /**
+     * The facets that were affected by configuration changes since the last switch of the world
+     * or <code>null</code> if all facets need to be recomputed
+     */
+    private Set<Class<? extends WorldFacet>> changedFacets = Sets.newHashSet();
 
-            @Override
-            public BufferedImage load(ImmutableVector2i pos) throws Exception {
-                enqueueTile(pos);
-                return dummyImg;
+    /**
+     * Facets that can be computed without holding the region lock
+     */
+    private volatile Set<Class<? extends WorldFacet>> lockFreeFacets = Collections.emptySet();
+
+    /**
+     * Replaced (never modified) whenever the world or the layers change
+     */
+    private volatile RenderEpoch epoch = new RenderEpoch(0, 0, null,
+            Collections.<FacetLayer>emptyList(), Collections.<FacetLayer, Integer>emptyMap());
+
+    /**
+     * @param viewConfig the view config
+     * @param cacheSize the maximum number of queued tasks and pyramid tiles (the other caches are limited by bytes)
+     */
+    public Viewer(ViewConfig viewConfig, int cacheSize) {
+        this.viewConfig = viewConfig;
+
+        dummyImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, null);
+        failedImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, "FAILED");
+
+        int numCores = Runtime.getRuntime().availableProcessors();
+        // region generation is expensive and the results are usually still needed - never interrupt it
+        regionScheduler = new TileScheduler("RegionStage", numCores, cacheSize, false);
+        rasterScheduler = new TileScheduler("RasterStage", Math.max(2, numCores / 2), cacheSize, true);
+
+        int maxWorkers = (viewConfig.getMaxWorkers() > 0) ? viewConfig.getMaxWorkers() : numCores * 2;
+        poolController = new PoolController(regionScheduler, viewConfig.getPoolMode(), viewConfig.getMinWorkers(), maxWorkers);
+        poolController.start();
+
+        // regions with 3D facets can be a hundred times larger than a tile image, so all caches are limited by bytes
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        regionCache = new WeightedCache<>("Regions", 0, batch -> ENTRY_BYTES + batch.getBytes() / batch.getTiles().size());
+        parkedRegions = new WeightedCache<>("Parked regions", 0, Viewer::estimateBytes);
+        layerCache = new WeightedCache<>("Layer rasters", 0, image -> ENTRY_BYTES + SizeEstimator.estimate(image));
+        imageCache = new WeightedCache<>("Tile images", 0, this::estimateTileBytes);
+        packedCache = new WeightedCache<>("Packed tiles", 0, packed -> ENTRY_BYTES + packed.getBytes());
+        worldVersions = CacheBuilder.newBuilder().maximumSize(MAX_CONFIG_STATES).build();
+        haloService = new HaloService(TILE_SIZE_X, TILE_SIZE_Y);
+
+        memoryGuard = new MemoryGuard(this::onMemoryRelief);
+        memoryGuard.register(regionCache, getBudget(viewConfig.getRegionCacheMB(), maxHeap * 3 / 10));
+        memoryGuard.register(parkedRegions, getBudget(viewConfig.getRegionCacheMB() / 3, maxHeap / 10));
+        memoryGuard.register(haloService.getStripCache(), getBudget(viewConfig.getRegionCacheMB() / 10, maxHeap / 20));
+        memoryGuard.register(layerCache, getBudget(viewConfig.getRasterCacheMB(), maxHeap * 3 / 20));
+        memoryGuard.register(imageCache, getBudget(viewConfig.getImageCacheMB(), maxHeap / 10));
+        memoryGuard.register(packedCache, getBudget(viewConfig.getPackedCacheMB(), maxHeap / 20));
+        memoryGuard.start();
+
+        // hot tiles are decoded images, warm tiles are packed and cold tiles are (optionally) off-heap
+        tileStore = createTileStore(viewConfig);
+        imageCache.setRemovalListener(this::onTileRemoval);
+        imageCache.setSharedWeight(interner::getBytes);
+        packedCache.setRemovalListener((pos, packed, evicted) -> {
+            if (evicted && tileStore != null) {
+                spillTile(pos, packed);
             }
-        };
+        });
 
-        regionCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(regionLoader);
-        imageCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(imageLoader);
+
+        // the tiles of the upper pyramid levels are only needed when zoomed out, so a quarter is sufficient
+        pyramid = new TilePyramid(TILE_SIZE_X, TILE_SIZE_Y, MAX_PYRAMID_LEVEL, cacheSize / 4, pos -> {
+            BufferedImage image = imageCache.get(pos, tileLoader);
+            return (image != dummyImg) ? image : null;
+        }, staleTiles::contains);
 
         Vector2i camPos = viewConfig.getCamPos();
         camera.translate(camPos.getX(), camPos.getY());
         camera.setZoom(viewConfig.getZoomFactor());
         camera.addListener(new RepaintingCameraListener(this));
 
-        worldOverlays.addLast(new GridOverlay(TILE_SIZE_X, TILE_SIZE_Y));
-        worldOverlays.addLast(new PixelOverlay(10));
+        prefetcher = new TilePrefetcher(camera, TILE_SIZE_X, TILE_SIZE_Y,
+                () -> worldToTileArea(camera.getVisibleArea(getWidth(), getHeight())),
+                () -> pyramid.getLevelFor(camera.getZoom()),
+                this::getPendingTiles,
+                this::isTileCached,
+                pos -> imageCache.get(pos, tileLoader));
+        prefetcher.setRingWidth(viewConfig.getPrefetchRing());
+        prefetcher.start();
+        camera.addListener(new CameraListener() {
+
+            @Override
+            public void onPosChange() {
+                updateTilePriorities();
+            }
+
+            @Override
+            public void onZoomChange() {
+                updateTilePriorities();
+            }
+        });
+
+        // must be added after the scheduler was updated
+        camera.addListener(prefetcher);
 
-        TextOverlay zoomOverlay = new TextOverlay(() -> String.format("Zoom: %3d%%", (int) (camera.getZoom() * 100)));
+        worldOverlays.add(new GridOverlay(TILE_SIZE_X, TILE_SIZE_Y));
+        worldOverlays.add(new PixelOverlay(10));
+
+        TextOverlay zoomOverlay = new TextOverlay(this::getZoomText);
         zoomOverlay.setHorizontalAlign(HorizontalAlign.RIGHT);
         zoomOverlay.setMargins(5, 5, 5, 5);
         zoomOverlay.setInsets(8, 5, 5, 5);
@@ -183,10 +421,19 @@ public final class Viewer extends JComponent {
         zoomOverlay.setVisible(false);
         camera.addListener(new ZoomOverlayUpdater(this, zoomOverlay));
         screenOverlays.add(zoomOverlay);
-        ScreenOverlay tooltipOverlay = new TooltipOverlay(screen -> {
-            Rect2i visWorld = camera.getVisibleArea(getWidth(), getHeight());
-            return getTooltip(toWorld(visWorld, screen));
-            });
+        statusOverlay = new TextOverlay(() -> initializing ? "Initializing world generator ..." : "Preview");
+        statusOverlay.setMargins(5, 5, 5, 5);
+        statusOverlay.setInsets(8, 5, 5, 5);
+        statusOverlay.setFont(new Font("Dialog", Font.BOLD, 15));
+        statusOverlay.setFrame(new Color(192, 192, 192, 128));
+        statusOverlay.setBackground(new Color(92, 92, 92, 160));
+        statusOverlay.setVisible(false);
+        screenOverlays.add(statusOverlay);
+
+        previewTimer = new Timer(PREVIEW_MILLIS, e -> endPreview());
+        previewTimer.setRepeats(false);
+        // the world position of the cursor is updated in paint() before the screen overlays are rendered
+        ScreenOverlay tooltipOverlay = new TooltipOverlay(screen -> getTooltip(worldCursor));
         screenOverlays.add(tooltipOverlay);
 
         setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
@@ -208,9 +455,170 @@ public final class Viewer extends JComponent {
         MouseAdapter repaintListener = new RepaintingMouseListener(this);
         addMouseListener(repaintListener);
         addMouseMotionListener(repaintListener);
+    }
 
-        dummyImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, null);
-        failedImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, "FAILED");
+    /**
+     * @param configMB the configured budget in MB or 0
+     * @param auto the budget in bytes if not configured
+     * @return the budget in bytes
+     */
+    private static long getBudget(int configMB, long auto) {
+        return (configMB > 0) ? (long) configMB << 20 : auto;
+    }
+
+    private static TileStore createTileStore(ViewConfig viewConfig) {
+        if (viewConfig.getOffHeapTiles() <= 0) {
+            return null;
+        }
+        try {
+            return new TileStore(TILE_SIZE_X, TILE_SIZE_Y, viewConfig.getOffHeapTiles(), viewConfig.isMappedTiles());
+        } catch (IOException e) {
+            logger.warn("Could not create the off-heap tile store - tiles are kept on the heap only", e);
+            return null;
+        }
+    }
+
+    /**
+     * Called when a tile image leaves the image cache - the cache is locked
+     * @param pos the tile position
+     * @param image the removed image
+     * @param evicted true if the image was evicted to meet the budget
+     */
+    private void onTileRemoval(ImmutableVector2i pos, BufferedImage image, boolean evicted) {
+        if (evicted) {
+            demoteTile(pos, image);
+        }
+        interner.release(image);
+    }
+
+    /**
+     * Queues the evicted image for being packed - the image cache is locked
+     * @param pos the tile position
+     * @param image the evicted image
+     */
+    private void demoteTile(ImmutableVector2i pos, BufferedImage image) {
+        if (image == dummyImg || image == failedImg || packedCache.getIfPresent(pos) != null) {
+            // placeholders are not worth keeping and packed tiles are unchanged
+            return;
+        }
+        if (pendingDemotions.size() >= MAX_PENDING_DEMOTIONS) {
+            // the packer cannot keep up - the tile is rendered again when needed
+            return;
+        }
+        pendingDemotions.put(pos, image);
+        packer.execute(() -> packTile(pos, image));
+    }
+
+    /**
+     * Packs an evicted image on the packer thread, unless it was restored or replaced in the meantime
+     * @param pos the tile position
+     * @param image the evicted image
+     */
+    private void packTile(ImmutableVector2i pos, BufferedImage image) {
+        if (pendingDemotions.get(pos) != image) {
+            return;
+        }
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        PackedTile packed = PackedTile.pack(pixels);
+        // publish() must not replace the tile between the check and the insertion
+        synchronized (pendingDemotions) {
+            if (!pendingDemotions.remove(pos, image)) {
+                return;
+            }
+            if (packed != null) {
+                packedCache.put(pos, packed);
+            } else if (tileStore != null) {
+                tileStore.put(pos, pixels);
+            }
+        }
+    }
+
+    /**
+     * Called when a packed tile is evicted from the packed cache - the cache is locked
+     * @param pos the tile position
+     * @param packed the evicted tile
+     */
+    private void spillTile(ImmutableVector2i pos, PackedTile packed) {
+        int[] pixels = new int[TILE_SIZE_X * TILE_SIZE_Y];
+        packed.unpack(pixels);
+        tileStore.put(pos, pixels);
+    }
+
+    private long estimateTileBytes(BufferedImage image) {
+        // the placeholders are shared and interned images are charged by the interner
+        boolean shared = image == dummyImg || image == failedImg || interner.getReferences(image) > 0;
+        return ENTRY_BYTES + (shared ? 0 : SizeEstimator.estimate(image));
+    }
+
+    /**
+     * @param regions the regions of a world version (batches are shared between tiles)
+     * @return the total size in bytes
+     */
+    private static long estimateBytes(Map<ImmutableVector2i, RegionBatch> regions) {
+        long total = 0;
+        Set<RegionBatch> batches = Sets.newIdentityHashSet();
+        for (RegionBatch batch : regions.values()) {
+            if (batches.add(batch)) {
+                total += batch.getBytes();
+            }
+        }
+        return total + (long) regions.size() * ENTRY_BYTES;
+    }
+
+    /**
+     * Unpacks the tile image, copies it back from the off-heap store or requests it - called if it is not cached
+     * @param pos the tile position
+     * @return the restored image or the placeholder image
+     */
+    private BufferedImage loadTile(ImmutableVector2i pos) {
+        BufferedImage pending = pendingDemotions.remove(pos);
+        if (pending != null) {
+            // not packed yet - the image can be used as it is
+            return interner.intern(pending);
+        }
+        PackedTile packed = packedCache.getIfPresent(pos);
+        if (packed != null) {
+            // the packed tile is kept, so it doesn't need to be packed again when the image is evicted
+            BufferedImage image = createTransparentImage(TILE_SIZE_X, TILE_SIZE_Y);
+            packed.unpack(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+            return interner.intern(image);
+        }
+        if (tileStore != null) {
+            BufferedImage stored = tileStore.get(pos, () -> createTransparentImage(TILE_SIZE_X, TILE_SIZE_Y));
+            if (stored != null) {
+                return interner.intern(stored);
+            }
+        }
+        enqueueTile(pos);
+        return dummyImg;
+    }
+
+    /**
+     * Doesn't change the eviction order of any cache, so warm tiles are not promoted.
+     * @param pos the tile position
+     * @return true if the tile is available in any of the tile caches (possibly as a placeholder)
+     */
+    private boolean isTileCached(ImmutableVector2i pos) {
+        return imageCache.contains(pos) || pendingDemotions.containsKey(pos) || packedCache.contains(pos)
+                || (tileStore != null && tileStore.contains(pos));
+    }
+
+    /**
+     * Called on the UI thread when the heap is no longer almost exhausted
+     */
+    private void onMemoryRelief() {
+        requestDeferredTiles();
+    }
+
+    /**
+     * Removes the placeholders of tiles that were not scheduled, so they are requested again when painted
+     */
+    private void requestDeferredTiles() {
+        for (ImmutableVector2i pos : deferredTiles) {
+            deferredTiles.remove(pos);
+            abandon(pos);
+        }
+        repaint();
     }
 
     private static BufferedImage createStaticImage(int width, int height, String text) {
@@ -235,14 +643,57 @@ public final class Viewer extends JComponent {
      * @return the number of tiles that is currently waiting for being processed
      */
     public int getPendingTiles() {
-        return taskList.size();
+        return regionScheduler.getPendingTasks() + rasterScheduler.getPendingTasks();
+    }
+
+    /**
+     * @return the current metrics of the region and the raster stage (in this order)
+     */
+    public List<StageMetrics> getStageMetrics() {
+        return ImmutableList.of(regionScheduler.getMetrics(), rasterScheduler.getMetrics());
     }
 
     /**
      * @return the number of tile images in the cache
      */
     public int getCachedTiles() {
-        return (int) imageCache.size();
+        return (int) (imageCache.size() + packedCache.size()) + ((tileStore != null) ? tileStore.size() : 0);
+    }
+
+    /**
+     * @return the heap size of the tile images and the packed tiles in bytes
+     */
+    public long getTileCacheBytes() {
+        return imageCache.getWeight() + packedCache.getWeight();
+    }
+
+    /**
+     * @return the current byte budget of the tile images and the packed tiles
+     */
+    public long getTileCacheBudget() {
+        return imageCache.getBudget() + packedCache.getBudget();
+    }
+
+    /**
+     * @return the number of region worker threads and the reason why it was chosen
+     */
+    public String getPoolStatus() {
+        return String.format("%d threads (%s): %s", poolController.getPoolSize(),
+                poolController.getMode().toString().toLowerCase(), poolController.getReason());
+    }
+
+    /**
+     * @return the memory usage of the caches and the state of the memory guard
+     */
+    public List<String> getMemoryStatus() {
+        ImmutableList.Builder<String> status = ImmutableList.builder();
+        status.add(regionCache.toString(), parkedRegions.toString(), haloService.getStripCache().toString(),
+                layerCache.toString(), imageCache.toString(),
+                interner.toString(), packedCache.toString());
+        if (tileStore != null) {
+            status.add(tileStore.toString());
+        }
+        return status.add(memoryGuard.toString()).build();
     }
 
     public Camera getCamera() {
@@ -260,24 +711,18 @@ public final class Viewer extends JComponent {
         AffineTransform orgTrans = g.getTransform();
 
         Rect2i visWorld = camera.getVisibleArea(getWidth(), getHeight());
-        Rect2i visTiles = worldToTileArea(visWorld);
 
         g.scale(camera.getZoom(), camera.getZoom());
         g.translate(-visWorld.minX(), -visWorld.minY());
 
-        drawTiles(g, visTiles);
+        revalidateTiles(visWorld);
+        drawTiles(g, visWorld);
 
-        Point curPos = curPosListener.getCursorPosition();
-
-        ImmutableVector2i screenCursor = null;
-        ImmutableVector2i worldCursor = null;
-        if (curPos != null) {
-            screenCursor = new ImmutableVector2i(curPos.x, curPos.y);
-            worldCursor = toWorld(visWorld, screenCursor);
-        }
+        updateCursor(visWorld);
 
         // draw world overlays
-        for (Overlay ovly : worldOverlays) {
+        for (int i = 0; i < worldOverlays.size(); i++) {
+            Overlay ovly = worldOverlays.get(i);
             if (ovly.isVisible()) {
                 ovly.render(g, visWorld, worldCursor);
             }
@@ -286,14 +731,48 @@ public final class Viewer extends JComponent {
         g.setTransform(orgTrans);
 
         // draw screen overlays
-        Rect2i windowRect = Rect2i.createFromMinAndSize(0, 0, getWidth(), getHeight());
-        for (Overlay ovly : screenOverlays) {
+        if (windowRect.width() != getWidth() || windowRect.height() != getHeight()) {
+            windowRect = Rect2i.createFromMinAndSize(0, 0, getWidth(), getHeight());
+        }
+        for (int i = 0; i < screenOverlays.size(); i++) {
+            Overlay ovly = screenOverlays.get(i);
             if (ovly.isVisible()) {
                 ovly.render(g, windowRect, screenCursor);
             }
         }
     }
 
+    /**
+     * Updates the screen and world position of the cursor if the cursor or the camera has moved
+     * @param visWorld the visible world area (the camera returns the same instance until it moves)
+     */
+    private void updateCursor(Rect2i visWorld) {
+        // the listener stores a new point for every mouse event
+        Point curPos = curPosListener.getCursorPosition();
+        if (curPos == cursorPoint && visWorld == cursorArea) {
+            return;
+        }
+
+        cursorPoint = curPos;
+        cursorArea = visWorld;
+        if (curPos != null) {
+            screenCursor = new ImmutableVector2i(curPos.x, curPos.y);
+            worldCursor = toWorld(visWorld, screenCursor);
+        } else {
+            screenCursor = null;
+            worldCursor = null;
+        }
+    }
+
+    private String getZoomText() {
+        int percent = (int) (camera.getZoom() * 100);
+        if (percent != zoomPercent) {
+            zoomPercent = percent;
+            zoomText = String.format("Zoom: %3d%%", percent);
+        }
+        return zoomText;
+    }
+
     private ImmutableVector2i toWorld(Rect2i visWorld, BaseVector2i screen) {
         int wx = visWorld.minX() + TeraMath.floorToInt(screen.getX() / camera.getZoom());
         int wy = visWorld.minY() + TeraMath.floorToInt(screen.getY() / camera.getZoom());
@@ -301,7 +780,8 @@ public final class Viewer extends JComponent {
     }
 
     /**
-     * @param wg the world generator to use
+     * Switches to the given generator immediately. The previous world is discarded.
+     * @param wg the world generator to use - it must be initialized already
      * @param newLayers the facet config
      */
     public void setWorldGen(WorldGenerator wg, List<FacetLayer> newLayers) {
@@ -310,18 +790,253 @@ public final class Viewer extends JComponent {
 
         // clear tile cache and repaint if any of the facet configs has changed
         for (FacetLayer layer : newLayers) {
-            layer.addObserver(l -> updateImageCache());
+            layerVersions.update(layer);
+            layer.addObserver(l -> {
+                if (layerVersions.update(l)) {
+                    onConfigChange(l);
+                }
+                // visibility or order changes only require re-compositing, which doesn't need a preview
+                updateImageCache();
+            });
         }
 
-        invalidateWorld();
+        // a pending initialization of the previous generator must not replace the new world
+        initRequest++;
+        changedFacets = Sets.newHashSet();
+        setInitializing(false);
+
+        // tiles of different generators must never be displayed side by side
+        rasterScheduler.cancelAll();
+        imageCache.invalidateAll();
+        synchronized (pendingDemotions) {
+            pendingDemotions.clear();
+            packedCache.invalidateAll();
+            if (tileStore != null) {
+                tileStore.clear();
+            }
+        }
+        staleTiles.clear();
+        pyramid.invalidateAll();
+
+        switchWorld(wg.getWorld(), null, ConfigFingerprint.of(wg));
+    }
+
+    /**
+     * Applies to regions that are generated from now on.
+     * @param facets the facets that were proven to be safe for concurrent computation
+     */
+    public void setLockFreeFacets(Set<Class<? extends WorldFacet>> facets) {
+        this.lockFreeFacets = ImmutableSet.copyOf(facets);
     }
 
+    /**
+     * Re-initializes the world generator in the background and recomputes all facets.
+     * Must be called on the UI thread.
+     */
     public void invalidateWorld() {
-        worldGen.initialize();
+        invalidateWorld(null);
+    }
+
+    /**
+     * Re-initializes the world generator in the background (e.g. after its configuration has changed).
+     * The previous world remains visible until the initialization is complete. Facets and layer rasters
+     * of cached regions that are not affected by the change are reused for the new world.
+     * Must be called on the UI thread.
+     * @param affectedFacets the facets that depend on the change or <code>null</code> if unknown
+     */
+    public void invalidateWorld(Set<Class<? extends WorldFacet>> affectedFacets) {
+        onConfigChange(null);
+        if (affectedFacets == null || changedFacets == null) {
+            changedFacets = null;
+        } else {
+            // the changes of superseded initializations must be applied as well
+            changedFacets.addAll(affectedFacets);
+        }
+
+        WorldGenerator wg = worldGen;
+        ConfigFingerprint fingerprint = ConfigFingerprint.of(wg);
+        int request = ++initRequest;
+        setInitializing(true);
+
+        // the queued regions would be discarded soon - leave the CPU to the initialization
+        regionScheduler.cancelAll();
+
+        SwingWorker<World, Void> worker = new SwingWorker<World, Void>() {
+
+            @Override
+            protected World doInBackground() {
+                // initializations of the same generator must not overlap
+                synchronized (wg) {
+                    Stopwatch sw = Stopwatch.createStarted();
+                    wg.initialize();
+                    logger.debug("Initialized world generator {} in {}ms.", wg.getUri(), sw.elapsed(TimeUnit.MILLISECONDS));
+                    return wg.getWorld();
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (request != initRequest) {
+                    // superseded by a later initialization or a different generator
+                    return;
+                }
+                setInitializing(false);
+                try {
+                    World world = get();
+                    Set<Class<? extends WorldFacet>> changed = changedFacets;
+                    changedFacets = Sets.newHashSet();
+                    switchWorld(world, changed, fingerprint);
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.error("Could not initialize world generator {}", wg.getUri(), e);
+                }
+            }
+        };
+        worker.execute();
+    }
 
+    /**
+     * @return true if the world generator is being initialized in the background
+     */
+    public boolean isInitializing() {
+        return initializing;
+    }
+
+    private void setInitializing(boolean value) {
+        initializing = value;
+        statusOverlay.setVisible(initializing || preview);
+        if (initializing) {
+            repaint();
+        } else {
+            requestDeferredTiles();
+        }
+    }
+
+    /**
+     * Switches to preview mode if the configuration changes repeatedly within a short time,
+     * e.g. while a spinner arrow is held down.
+     * @param layer the layer that was changed or <code>null</code> if the world configuration was changed
+     */
+    private void onConfigChange(FacetLayer layer) {
+        // the layer that is being tuned must not disappear
+        editedLayer = layer;
+        long now = System.currentTimeMillis();
+        if (preview || now - lastChangeTime < PREVIEW_MILLIS) {
+            if (!preview) {
+                preview = true;
+                // off-screen tiles would be outdated soon anyway
+                prefetcher.setRingWidth(0);
+                statusOverlay.setVisible(true);
+            }
+            previewTimer.restart();
+        }
+        lastChangeTime = now;
+    }
+
+    /**
+     * Called once the configuration was stable for a while - renders all layers in full quality
+     */
+    private void endPreview() {
+        preview = false;
+        editedLayer = null;
+        prefetcher.setRingWidth(viewConfig.getPrefetchRing());
+        statusOverlay.setVisible(initializing);
+        updateImageCache();
+    }
+
+    /**
+     * @param layer the facet layer
+     * @return false for layers that are too expensive for a preview (3D facets or halos)
+     */
+    private static boolean isPreviewLayer(FacetLayer layer) {
+        Class<? extends WorldFacet> facet = RenderEpoch.getRenderedFacet(layer);
+        boolean is3D = facet != null && WorldFacet3D.class.isAssignableFrom(facet);
+        return !is3D && !(layer instanceof HaloLayer);
+    }
+
+    /**
+     * Replaces the world in a single step on the UI thread. The regions of the previous world are parked,
+     * so that they can be restored if the configuration is restored (e.g. by undo). Known configurations
+     * get their regions back, for new ones the unaffected facets of the previous regions and the rasters
+     * of unaffected layers are reused. Tile images are kept as stale images until they are replaced.
+     * @param world the new world
+     * @param changed the facets that need to be recomputed or <code>null</code> for all facets
+     * @param fingerprint the configuration of the new world
+     */
+    private void switchWorld(World world, Set<Class<? extends WorldFacet>> changed, ConfigFingerprint fingerprint) {
+        int oldVersion = epoch.getWorldVersion();
+        Integer knownVersion = worldVersions.getIfPresent(fingerprint);
+        int newVersion = (knownVersion != null) ? knownVersion.intValue() : nextWorldVersion++;
+        worldVersions.put(fingerprint, newVersion);
+
+        epoch = epoch.nextWorld(world, newVersion);
+        regionScheduler.cancelAll();
+
+        Map<ImmutableVector2i, RegionBatch> oldRegions = regionCache.snapshot();
         regionCache.invalidateAll();
+        // the strips are keyed by world version, but those of the previous world are rarely needed again
+        haloService.invalidateAll();
+        // batches that were extended during the initialization might mix both configurations
+        int oldRequest = worldRequest;
+        Map<ImmutableVector2i, RegionBatch> verified = Maps.filterValues(oldRegions, batch -> batch.getInitRequest() == oldRequest);
+        if (!verified.isEmpty()) {
+            parkedRegions.put(oldVersion, ImmutableMap.copyOf(verified));
+        }
+        worldRequest = initRequest;
+
+        Map<ImmutableVector2i, RegionBatch> restored = parkedRegions.getIfPresent(newVersion);
+        if (restored != null) {
+            parkedRegions.invalidate(newVersion);
+            for (RegionBatch batch : restored.values()) {
+                batch.setInitRequest(worldRequest);
+            }
+            regionCache.putAll(restored);
+            logger.debug("Restored {} regions of {}", restored.size(), fingerprint);
+        } else if (changed != null) {
+            reuseRegions(oldRegions, world, changed);
+            reuseLayerRasters(oldVersion, newVersion, changed);
+        }
+
         updateImageCache();
-     }
+    }
+
+    /**
+     * Creates a batch of the new world for every previous batch that shares all unaffected facets.
+     * This saves the facets that are requested directly (e.g. by layers), but not the upstream facets
+     * of the affected ones - the new regions generate those again.
+     */
+    private void reuseRegions(Map<ImmutableVector2i, RegionBatch> oldRegions, World world, Set<Class<? extends WorldFacet>> changed) {
+        Map<RegionBatch, RegionBatch> replacements = Maps.newIdentityHashMap();
+        for (Map.Entry<ImmutableVector2i, RegionBatch> entry : oldRegions.entrySet()) {
+            RegionBatch batch = replacements.computeIfAbsent(entry.getValue(), old -> {
+                ThreadSafeRegion region = new ThreadSafeRegion(world.getWorldData(old.getRegion().getRegion()), lockFreeFacets);
+                region.reuseFacets(old.getRegion(), changed);
+                RegionBatch copy = new RegionBatch(old.getOrigin(), old.getSize(), region);
+                copy.setInitRequest(worldRequest);
+                // an upper bound - measuring all batches would block the UI thread
+                copy.setBytes(old.getBytes());
+                return copy;
+            });
+            regionCache.put(entry.getKey(), batch);
+        }
+    }
+
+    /**
+     * Copies the rasters of layers that render unaffected facets to the new world version.
+     * Layers that don't declare a rendered facet are always rendered again.
+     * The rasters of the old version are kept, since the old configuration might be restored.
+     */
+    private void reuseLayerRasters(int oldVersion, int newVersion, Set<Class<? extends WorldFacet>> changed) {
+        Map<LayerRasterKey, BufferedImage> reused = Maps.newHashMap();
+        for (Map.Entry<LayerRasterKey, BufferedImage> entry : layerCache.snapshot().entrySet()) {
+            LayerRasterKey key = entry.getKey();
+            Class<? extends WorldFacet> facet = RenderEpoch.getRenderedFacet(key.getLayer());
+            if (key.getWorldVersion() == oldVersion && facet != null && !changed.contains(facet)) {
+                reused.put(key.withWorldVersion(newVersion), entry.getValue());
+            }
+        }
+        layerCache.putAll(reused);
+        logger.debug("Reused {} layer rasters - recomputing {}", reused.size(), changed);
+    }
 
     public void close() {
         int cx = (int) camera.getPos().getX();
@@ -330,20 +1045,35 @@ public final class Viewer extends JComponent {
         viewConfig.setCamPos(new Vector2i(cx, cy));
         viewConfig.setZoomFactor(camera.getZoom());
 
-        threadPool.shutdownNow();
+        prefetcher.stop();
+        poolController.stop();
+        memoryGuard.stop();
+        regionScheduler.shutdown();
+        rasterScheduler.shutdown();
+        packer.shutdownNow();
+        if (tileStore != null) {
+            tileStore.close();
+        }
     }
 
     private static Rect2i worldToTileArea(Rect2i area) {
-        int chunkMinX = IntMath.divide(area.minX(), TILE_SIZE_X, RoundingMode.FLOOR);
-        int chunkMinZ = IntMath.divide(area.minY(), TILE_SIZE_Y, RoundingMode.FLOOR);
+        return worldToTileArea(area, 0);
+    }
+
+    private static Rect2i worldToTileArea(Rect2i area, int level) {
+        int sizeX = TILE_SIZE_X << level;
+        int sizeY = TILE_SIZE_Y << level;
 
-        int chunkMaxX = IntMath.divide(area.maxX(), TILE_SIZE_X, RoundingMode.FLOOR);
-        int chunkMaxZ = IntMath.divide(area.maxY(), TILE_SIZE_Y, RoundingMode.FLOOR);
+        int chunkMinX = IntMath.divide(area.minX(), sizeX, RoundingMode.FLOOR);
+        int chunkMinZ = IntMath.divide(area.minY(), sizeY, RoundingMode.FLOOR);
+
+        int chunkMaxX = IntMath.divide(area.maxX(), sizeX, RoundingMode.FLOOR);
+        int chunkMaxZ = IntMath.divide(area.maxY(), sizeY, RoundingMode.FLOOR);
 
         return Rect2i.createFromMinAndMax(chunkMinX, chunkMinZ, chunkMaxX, chunkMaxZ);
     }
 
-    private void drawTiles(Graphics2D g, Rect2i visChunks) {
+    private void drawTiles(Graphics2D g, Rect2i visWorld) {
 
         Object hint;
 
@@ -356,33 +1086,145 @@ public final class Viewer extends JComponent {
         }
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
 
-        for (int z = visChunks.minY(); z <= visChunks.maxY(); z++) {
-            for (int x = visChunks.minX(); x <= visChunks.maxX(); x++) {
-                ImmutableVector2i pos = new ImmutableVector2i(x, z);
-                BufferedImage image = imageCache.getUnchecked(pos);
-                g.drawImage(image, x * TILE_SIZE_X, z * TILE_SIZE_Y, null);
+        int level = pyramid.getLevelFor(camera.getZoom());
+        int sizeX = TILE_SIZE_X << level;
+        int sizeY = TILE_SIZE_Y << level;
+
+        // the same as worldToTileArea(), but without creating a rectangle
+        int minX = IntMath.divide(visWorld.minX(), sizeX, RoundingMode.FLOOR);
+        int minZ = IntMath.divide(visWorld.minY(), sizeY, RoundingMode.FLOOR);
+        int maxX = IntMath.divide(visWorld.maxX(), sizeX, RoundingMode.FLOOR);
+        int maxZ = IntMath.divide(visWorld.maxY(), sizeY, RoundingMode.FLOOR);
+
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                drawTile(g, level, x, z);
             }
         }
 
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
     }
 
-    private Region getRegion(BaseVector2i pos) {
+    private void drawTile(Graphics2D g, int level, int x, int z) {
+        int sizeX = TILE_SIZE_X << level;
+        int sizeY = TILE_SIZE_Y << level;
+
+        BufferedImage image = pyramid.getTile(level, x, z);
+        if (image != null) {
+            g.drawImage(image, x * sizeX, z * sizeY, sizeX, sizeY, null);
+            if (viewConfig.isMarkStaleTiles() && pyramid.isStale(level, x, z)) {
+                g.setColor(STALE_TILE_HINT);
+                g.fillRect(x * sizeX, z * sizeY, sizeX, sizeY);
+            }
+        } else if (level > 0) {
+            // not all covered tiles are finished yet - draw the four children instead
+            drawTile(g, level - 1, x * 2, z * 2);
+            drawTile(g, level - 1, x * 2 + 1, z * 2);
+            drawTile(g, level - 1, x * 2, z * 2 + 1);
+            drawTile(g, level - 1, x * 2 + 1, z * 2 + 1);
+        } else {
+            g.drawImage(dummyImg, x * sizeX, z * sizeY, null);
+        }
+    }
+
+    /**
+     * Re-renders outdated tiles once they become visible
+     * @param visWorld the visible area in world coords.
+     */
+    private void revalidateTiles(Rect2i visWorld) {
+        if (staleTiles.isEmpty()) {
+            return;
+        }
+        RenderEpoch current = epoch;
+        int minX = IntMath.divide(visWorld.minX(), TILE_SIZE_X, RoundingMode.FLOOR);
+        int minZ = IntMath.divide(visWorld.minY(), TILE_SIZE_Y, RoundingMode.FLOOR);
+        int maxX = IntMath.divide(visWorld.maxX(), TILE_SIZE_X, RoundingMode.FLOOR);
+        int maxZ = IntMath.divide(visWorld.maxY(), TILE_SIZE_Y, RoundingMode.FLOOR);
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                // every stale tile is requested only once per epoch
+                ImmutableVector2i pos = staleTiles.request(x, z, current);
+                if (pos == null) {
+                    continue;
+                }
+                if (imageCache.getIfPresent(pos) == null && !isStored(pos)) {
+                    // evicted in the meantime - it will be requested as a new tile
+                    staleTiles.remove(pos);
+                } else if (!isScheduled(pos)) {
+                    enqueueTile(pos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-ranks pending tiles based on the visible area and the cursor position
+     */
+    private void updateTilePriorities() {
+        Rect2i visWorld = camera.getVisibleArea(getWidth(), getHeight());
+        Rect2i visTiles = worldToTileArea(visWorld);
+
+        ImmutableVector2i cursorTile = null;
+        Point curPos = curPosListener.getCursorPosition();
+        if (curPos != null) {
+            ImmutableVector2i worldCursor = toWorld(visWorld, new ImmutableVector2i(curPos.x, curPos.y));
+            int tileX = IntMath.divide(worldCursor.getX(), TILE_SIZE_X, RoundingMode.FLOOR);
+            int tileY = IntMath.divide(worldCursor.getY(), TILE_SIZE_Y, RoundingMode.FLOOR);
+            cursorTile = new ImmutableVector2i(tileX, tileY);
+        }
+
+        regionScheduler.reprioritize(visTiles, cursorTile);
+        rasterScheduler.reprioritize(visTiles, cursorTile);
+    }
+
+    /**
+     * @param pos the world position
+     * @return the cached region or <code>null</code> if it has not been generated (yet)
+     */
+    private ThreadSafeRegion getRegion(BaseVector2i pos) {
 
         int tileX = IntMath.divide(pos.getX(), TILE_SIZE_X, RoundingMode.FLOOR);
         int tileY = IntMath.divide(pos.getY(), TILE_SIZE_Y, RoundingMode.FLOOR);
 
-        ImmutableVector2i tilePos = new ImmutableVector2i(tileX, tileY);
-        Region region = regionCache.getUnchecked(tilePos);
-        return region;
+        // the cursor usually stays within the same tile
+        if (tooltipTile == null || tooltipTile.getX() != tileX || tooltipTile.getY() != tileY) {
+            tooltipTile = new ImmutableVector2i(tileX, tileY);
+        }
+        RegionBatch batch = regionCache.getIfPresent(tooltipTile);
+        return (batch != null) ? batch.getRegion() : null;
+    }
+
+    /**
+     * The text is only rebuilt if the cursor has moved, the region has changed or the layers have changed.
+     * @param world the world position of the cursor
+     * @return the tooltip text
+     */
+    private String getTooltip(ImmutableVector2i world) {
+        // tooltips must never trigger the generation of regions or facets on the UI thread
+        ThreadSafeRegion region = getRegion(world);
+        RenderEpoch current = epoch;
+        if (world != tooltipPos || region != tooltipRegion || current != tooltipEpoch) {
+            tooltipPos = world;
+            tooltipRegion = region;
+            tooltipEpoch = current;
+            tooltipText = createTooltip(world, region, current);
+        }
+        return tooltipText;
     }
 
-    private String getTooltip(BaseVector2i world) {
-        Region region = getRegion(world);
+    private String createTooltip(BaseVector2i world, ThreadSafeRegion region, RenderEpoch renderEpoch) {
+        if (region == null) {
+            return String.format("%d / %d", world.getX(), world.getY());
+        }
+
+        // layers that don't declare their facet could access any facet, so all of them must be computed
+        boolean complete = region.hasFacets(renderEpoch.getWorld().getAllFacets());
 
         StringBuffer sb = new StringBuffer();
         for (FacetLayer layer : facetLayers) {
-            if (layer.isVisible()) {
+            Class<? extends WorldFacet> facet = RenderEpoch.getRenderedFacet(layer);
+            boolean available = (facet != null) ? region.hasFacet(facet) : complete;
+            if (layer.isVisible() && available) {
                 try {
                     String layerText = layer.getWorldText(region, world.getX(), world.getY());
                     if (layerText != null) {
@@ -398,15 +1240,48 @@ public final class Viewer extends JComponent {
         return tooltip;
     }
 
-    private Region createRegion(ImmutableVector2i chunkPos) {
+    /**
+     * @param renderEpoch the epoch that defines the visible layers
+     * @return the full column height if any visible layer renders a 3D facet, a single block otherwise
+     */
+    private static int getRegionHeight(RenderEpoch renderEpoch) {
+        return renderEpoch.requires3D() ? COLUMN_HEIGHT : FLAT_HEIGHT;
+    }
 
-        int vertChunks = 4; // 4 chunks high (relevant for trees, etc)
+    /**
+     * @param region the cached region
+     * @param renderEpoch the epoch that defines the visible layers
+     * @return true if the region is high enough and contains all facets that are required
+     */
+    private static boolean isComplete(ThreadSafeRegion region, RenderEpoch renderEpoch) {
+        return region.getRegion().sizeY() >= getRegionHeight(renderEpoch)
+                && region.hasFacets(renderEpoch.getRequiredFacets());
+    }
 
-        int minX = chunkPos.getX() * TILE_SIZE_X;
-        int minZ = chunkPos.getY() * TILE_SIZE_Y;
-        int height = vertChunks * ChunkConstants.SIZE_Y;
-        Region3i area3d = Region3i.createFromMinAndSize(new Vector3i(minX, 0, minZ), new Vector3i(TILE_SIZE_X, height, TILE_SIZE_Y));
-        World world = worldGen.getWorld();
+    /**
+     * Larger batches share the facet borders and the per-region overhead between tiles,
+     * but increase the latency of the first tile. Batches are used only if all worker threads are busy.
+     * 3D regions are large already, so they are never batched by more than 2x2 tiles.
+     * @param renderEpoch the epoch that defines the layers
+     * @return the edge length of the region batch (in tiles)
+     */
+    private int getBatchSize(RenderEpoch renderEpoch) {
+        if (regionScheduler.getPendingTasks() < regionScheduler.getPoolSize()) {
+            return 1;
+        }
+        int level = pyramid.getLevelFor(camera.getZoom());
+        if (level >= 2 && !renderEpoch.requires3D()) {
+            return 4;
+        }
+        return 2;
+    }
+
+    private ThreadSafeRegion createRegion(ImmutableVector2i origin, int size, World world, int height) {
+
+        int minX = origin.getX() * TILE_SIZE_X;
+        int minZ = origin.getY() * TILE_SIZE_Y;
+        Vector3i extent = new Vector3i(TILE_SIZE_X * size, height, TILE_SIZE_Y * size);
+        Region3i area3d = Region3i.createFromMinAndSize(new Vector3i(minX, 0, minZ), extent);
 
         // The region needs to be thread-safe, since the rendering of the tooltip
         // might access Region.getFacet() at the same time as a thread from the thread pool
@@ -414,102 +1289,285 @@ public final class Viewer extends JComponent {
         // This is often irrelevant, but composed facets such as Perlin's surface height facet,
         // which consists of the ground layer plus hills and mountains plus rivers
         // the method could return a partly created facet if accessed in parallel.
-        Region region = new ThreadSafeRegion(world.getWorldData(area3d));
-
-        return region;
+        // Facets are computed lazily, together with the facets they depend on.
+        return new ThreadSafeRegion(world.getWorldData(area3d), lockFreeFacets);
     }
 
     /**
-     * Called whenever a facet layer configuration changes
+     * Called whenever a facet layer, its visibility, its position or its configuration changes
      */
     private void updateImageCache() {
-        for (Future<?> task : taskList) {
-            task.cancel(true);
+        List<FacetLayer> visibleLayers = Lists.newArrayList();
+        for (FacetLayer layer : facetLayers) {
+            if (layer.isVisible() && (!preview || layer == editedLayer || isPreviewLayer(layer))) {
+                visibleLayers.add(layer);
+            }
         }
 
-        Set<ImmutableVector2i> cachedTiles = imageCache.asMap().keySet();
-        Set<ImmutableVector2i> oldTiles = new HashSet<>(cachedTiles);
+        // running tasks will notice the new epoch and drop their results
+        // generated regions are still valid, so only the raster stage is cancelled
+        epoch = epoch.nextLayers(visibleLayers, layerVersions.snapshot());
+        rasterScheduler.cancelAll();
+        updateTilePriorities();
+
+        // Keep the outdated images until they are replaced.
+        // Visible tiles are re-rendered in the next call to paint(), all others once they become visible.
+        // The markers of tiles that are no longer cached are dropped.
+        Set<ImmutableVector2i> cached = Sets.newHashSet();
+        for (Map.Entry<ImmutableVector2i, BufferedImage> entry : imageCache.snapshot().entrySet()) {
+            if (entry.getValue() != dummyImg) {
+                cached.add(entry.getKey());
+            }
+        }
+        // pending images move to the packed cache, so they are collected first
+        cached.addAll(pendingDemotions.keySet());
+        cached.addAll(packedCache.snapshot().keySet());
+        if (tileStore != null) {
+            cached.addAll(tileStore.getTiles());
+        }
+        staleTiles.reset(cached);
 
-        Rect2i visWorld = camera.getVisibleArea(getWidth(), getHeight());
-        Rect2i visTileArea = worldToTileArea(visWorld);
+        pyramid.markAllStale();
+        repaint();
+    }
 
-        List<ImmutableVector2i> visTiles = new ArrayList<>(visTileArea.area());
+    /**
+     * @param pos the tile position
+     * @return true if the tile is generated or rasterized for the current epoch already
+     */
+    private boolean isScheduled(ImmutableVector2i pos) {
+        RenderEpoch current = epoch;
+        return rasterScheduler.isScheduled(pos, current) || isRegionScheduled(pos, current);
+    }
 
-        // the iterator vector cannot be used for permanent storage - it must be copied
-        for (BaseVector2i pos : visTileArea.contents()) {
-            visTiles.add(new ImmutableVector2i(pos));
+    /**
+     * @param pos the tile position
+     * @param renderEpoch the epoch that defines the world
+     * @return true if the tile is covered by a region task of any batch size
+     */
+    private boolean isRegionScheduled(ImmutableVector2i pos, RenderEpoch renderEpoch) {
+        for (int size : BATCH_SIZES) {
+            ImmutableVector2i origin = RegionBatch.getOrigin(pos, size);
+            if (regionScheduler.isScheduled(origin, renderEpoch.getRegionTaskVersion(size))) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        // shuffle the order of new tasks
-        // If the queue is cleared repeatedly before all tasks are run
-        // some tiles will updated only in the last iteration
-        // Plus, it looks nicer :-)
-        Collections.shuffle(visTiles);
-
-        for (ImmutableVector2i tile : visTiles) {
-            oldTiles.remove(tile);
-            enqueueTile(tile);
+    /**
+     * Requests a new image for the given tile. The region (or the missing facets)
+     * is generated first if it is not cached.
+     * @param pos the tile position
+     */
+    private void enqueueTile(ImmutableVector2i pos) {
+        RenderEpoch taskEpoch = epoch;
+        RegionBatch batch = regionCache.getIfPresent(pos);
+        boolean complete = batch != null && isComplete(batch.getRegion(), taskEpoch);
+        if (complete || hasAllLayerRasters(pos, taskEpoch)) {
+            enqueueRaster(pos, taskEpoch);
+        } else if (initializing || memoryGuard.isCritical()) {
+            // the tile is requested again after the world switch or once there is enough free memory
+            deferredTiles.add(pos);
+        } else if (!isRegionScheduled(pos, taskEpoch)) {
+            // a batch of a different size would supersede the task that already covers the tile
+            int size = getBatchSize(taskEpoch);
+            enqueueRegion(RegionBatch.getOrigin(pos, size), size, taskEpoch);
         }
+    }
 
-        imageCache.invalidateAll(oldTiles);
+    /**
+     * @param pos the tile position
+     * @param renderEpoch the epoch that defines the layers
+     * @return true if the tile can be composed without generating its region
+     */
+    private boolean hasAllLayerRasters(ImmutableVector2i pos, RenderEpoch renderEpoch) {
+        for (FacetLayer layer : renderEpoch.getLayers()) {
+            LayerRasterKey key = new LayerRasterKey(pos, renderEpoch.getWorldVersion(), layer, renderEpoch.getConfigVersion(layer));
+            if (layerCache.getIfPresent(key) == null) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private void enqueueTile(ImmutableVector2i pos) {
-        RunnableFuture<BufferedImage> task = new FutureTask<BufferedImage>(new UpdateImageCache(pos)) {
+    private void enqueueRegion(ImmutableVector2i origin, int size, RenderEpoch taskEpoch) {
+        Object version = taskEpoch.getRegionTaskVersion(size);
+        List<ImmutableVector2i> tiles = RegionBatch.getTiles(origin, size);
+        GenerateRegion generator = new GenerateRegion(origin, size, taskEpoch, initRequest);
+        TileTask<RegionBatch> task = new TileTask<RegionBatch>(origin, version, generator) {
 
             @Override
             protected void done() {
-                if (!isCancelled()) {
-                    BufferedImage result;
+                RenderEpoch current = epoch;
+                if (isCancelled() || !taskEpoch.isSameWorld(current)) {
+                    tiles.forEach(pos -> abandon(pos));
+                } else {
                     try {
-                        result = get();
+                        get();
+                        // the layers may have changed in the meantime - always use the latest ones
+                        for (ImmutableVector2i pos : tiles) {
+                            if (isRequested(pos)) {
+                                enqueueRaster(pos, current);
+                            }
+                        }
                     } catch (ExecutionException | InterruptedException e) {
-                        logger.error("Could not rasterize tile {}", pos, e);
-                        result = failedImg;
+                        if (isAborted(e)) {
+                            tiles.forEach(pos -> abandon(pos));
+                        } else {
+                            logger.error("Could not generate region {}", generator, e);
+                            for (ImmutableVector2i pos : tiles) {
+                                if (isRequested(pos)) {
+                                    publish(pos, current, failedImg);
+                                }
+                            }
+                        }
                     }
-                    imageCache.put(pos, result);
-                    repaint();
                 }
-                taskList.remove(this);
+                super.done();
             }
         };
-        taskList.add(task);
-        threadPool.execute(task);
+        // if an equivalent task is in progress already, it will trigger the rasterization
+        regionScheduler.execute(task);
     }
 
     /**
-     * Note: this method must be thread-safe!
-     * @param region the thread-safe region
-     * @return an image of that region
+     * @param pos the tile position
+     * @return true if the tile image was evicted to the packed cache or the off-heap store (or is about to be)
      */
-    BufferedImage rasterize(Region region) {
+    private boolean isStored(ImmutableVector2i pos) {
+        return pendingDemotions.containsKey(pos) || packedCache.getIfPresent(pos) != null
+                || (tileStore != null && tileStore.contains(pos));
+    }
 
-        Vector3i extent = region.getRegion().size();
-        int width = extent.x;
-        int height = extent.z;
+    /**
+     * @param pos the tile position
+     * @return true if the tile is waiting for its first or for an updated image
+     */
+    private boolean isRequested(ImmutableVector2i pos) {
+        return imageCache.getIfPresent(pos) == dummyImg || staleTiles.contains(pos);
+    }
 
-        DirectColorModel colorModel = ColorModels.ARGB;
+    private void enqueueRaster(ImmutableVector2i pos, RenderEpoch taskEpoch) {
+        TileTask<BufferedImage> task = new TileTask<BufferedImage>(pos, taskEpoch, new RasterizeTile(pos, taskEpoch)) {
 
-        int[] masks = colorModel.getMasks();
-        DataBufferInt imageBuffer = new DataBufferInt(width * height);
-        WritableRaster raster = Raster.createPackedRaster(imageBuffer, width, height, width, masks, null);
-        BufferedImage image = new BufferedImage(colorModel, raster, false, null);
+            @Override
+            protected void done() {
+                BufferedImage result = isCancelled() ? null : getResult(this);
+
+                if (result != null) {
+                    publish(pos, taskEpoch, result);
+                } else {
+                    abandon(pos);
+                }
+                super.done();
+            }
+        };
+        rasterScheduler.execute(task);
+    }
+
+    /**
+     * Puts the image into the cache, unless it was created for an outdated epoch.
+     * @param pos the tile position
+     * @param imageEpoch the epoch that was used to create the image
+     * @param image the tile image
+     */
+    private void publish(ImmutableVector2i pos, RenderEpoch imageEpoch, BufferedImage image) {
+        // results from outdated epochs must never reach the cache
+        if (imageEpoch == epoch) {
+            // the packed and stored copies are outdated
+            synchronized (pendingDemotions) {
+                pendingDemotions.remove(pos);
+                packedCache.invalidate(pos);
+                if (tileStore != null) {
+                    tileStore.remove(pos);
+                }
+            }
+            imageCache.put(pos, (image != failedImg) ? interner.intern(image) : image);
+            staleTiles.remove(pos);
+            // a tile that is rebuilt on the UI thread right now might still use the previous image
+            SwingUtilities.invokeLater(() -> pyramid.invalidate(pos));
+            repaint();
+        } else {
+            abandon(pos);
+        }
+    }
+
+    /**
+     * Removes the placeholder image, so that the tile is requested again when it becomes visible.
+     * @param pos the tile position
+     */
+    private void abandon(ImmutableVector2i pos) {
+        imageCache.remove(pos, dummyImg);
+        staleTiles.retry(pos);
+    }
+
+    /**
+     * @param e the exception thrown by {@link TileTask#get()}
+     * @return true if the task noticed that it is outdated
+     */
+    private static boolean isAborted(Exception e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof UncheckedExecutionException) {
+            // thrown by the region cache
+            cause = cause.getCause();
+        }
+        return cause instanceof CancellationException;
+    }
+
+    /**
+     * @param task the completed task
+     * @return the result, the "failed" image if an error occurred, or <code>null</code> if it was aborted
+     */
+    private BufferedImage getResult(TileTask<BufferedImage> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException | InterruptedException e) {
+            if (isAborted(e)) {
+                return null;
+            }
+            logger.error("Could not rasterize tile {}", task.getPos(), e);
+            return failedImg;
+        }
+    }
+
+    /**
+     * Aborts the current thread if the given epoch is outdated or if it was interrupted.
+     * @param renderEpoch the epoch to check
+     * @throws CancellationException if the epoch is outdated or if the thread was interrupted
+     */
+    private void checkEpoch(RenderEpoch renderEpoch) {
+        if (renderEpoch != epoch || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Outdated tile task " + renderEpoch);
+        }
+    }
+
+    /**
+     * Composes the tile image from the cached layer rasters. Missing rasters are rendered first.
+     * Note: this method must be thread-safe!
+     * @param pos the tile position
+     * @param renderEpoch the epoch that defines the layers - it is checked between every layer
+     * @return the tile image
+     * @throws CancellationException if the epoch became outdated or if the region of a missing raster was evicted
+     */
+    BufferedImage composite(ImmutableVector2i pos, RenderEpoch renderEpoch) {
+
+        BufferedImage image = createTransparentImage(TILE_SIZE_X, TILE_SIZE_Y);
 
         Graphics2D g = image.createGraphics();
         g.setColor(Color.BLACK);
-        g.fillRect(0, 0, width, height);
+        g.fillRect(0, 0, TILE_SIZE_X, TILE_SIZE_Y);
 
         try {
             Stopwatch sw = Stopwatch.createStarted();
 
-            for (FacetLayer layer : facetLayers) {
-                if (layer.isVisible()) {
-                    layer.render(image, region);
-                }
+            for (FacetLayer layer : renderEpoch.getLayers()) {
+                checkEpoch(renderEpoch);
+                g.drawImage(getLayerRaster(pos, layer, renderEpoch), 0, 0, null);
             }
 
             if (logger.isTraceEnabled()) {
-                logger.trace("Rendered region in {}ms.", sw.elapsed(TimeUnit.MILLISECONDS));
+                logger.trace("Composed tile in {}ms.", sw.elapsed(TimeUnit.MILLISECONDS));
             }
         } finally {
             g.dispose();
@@ -518,20 +1576,250 @@ public final class Viewer extends JComponent {
         return image;
     }
 
-    private class UpdateImageCache implements Callable<BufferedImage> {
+    private BufferedImage getLayerRaster(ImmutableVector2i pos, FacetLayer layer, RenderEpoch renderEpoch) {
+        LayerRasterKey key = new LayerRasterKey(pos, renderEpoch.getWorldVersion(), layer, renderEpoch.getConfigVersion(layer));
+        BufferedImage raster = layerCache.getIfPresent(key);
+        if (raster == null) {
+            RegionBatch batch = regionCache.getIfPresent(pos);
+            if (batch == null) {
+                // evicted in the meantime - the tile is requested again once it becomes visible
+                throw new CancellationException("Region of tile " + pos + " was evicted");
+            }
+            if (batch.getRegion().getRegion().sizeY() < getRegionHeight(renderEpoch)) {
+                // a 3D layer was enabled while the flat region was generated
+                throw new CancellationException("Region of tile " + pos + " is too flat");
+            }
+            // the neighbors in the batch are usually requested at the same time - render the layer only once
+            synchronized (batch) {
+                raster = layerCache.getIfPresent(key);
+                if (raster == null) {
+                    raster = rasterizeBatch(batch, pos, layer, renderEpoch);
+                }
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Renders the layer for the entire batch and slices it into tiles.
+     * The keys are still valid, even if the epoch has changed in the meantime.
+     * @return the raster of the given tile
+     */
+    private BufferedImage rasterizeBatch(RegionBatch batch, ImmutableVector2i pos, FacetLayer layer, RenderEpoch renderEpoch) {
+        BufferedImage full = rasterize(batch.getRegion(), layer, renderEpoch);
+        if (batch.getSize() == 1) {
+            layerCache.put(new LayerRasterKey(pos, renderEpoch.getWorldVersion(), layer, renderEpoch.getConfigVersion(layer)), full);
+            return full;
+        }
+
+        BufferedImage result = null;
+        ImmutableVector2i origin = batch.getOrigin();
+        for (ImmutableVector2i tile : batch.getTiles()) {
+            int offX = (tile.getX() - origin.getX()) * TILE_SIZE_X;
+            int offY = (tile.getY() - origin.getY()) * TILE_SIZE_Y;
+            BufferedImage slice = createTransparentImage(TILE_SIZE_X, TILE_SIZE_Y);
+            // copy the pixels rather than sharing the raster, so that every slice can be evicted individually
+            slice.getRaster().setRect(-offX, -offY, full.getRaster());
+            layerCache.put(new LayerRasterKey(tile, renderEpoch.getWorldVersion(), layer, renderEpoch.getConfigVersion(layer)), slice);
+            if (tile.equals(pos)) {
+                result = slice;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Note: this method must be thread-safe!
+     * @param region the thread-safe region
+     * @param layer the layer to render
+     * @param renderEpoch the epoch that defines the world
+     * @return a transparent image of that region that contains only the given layer
+     */
+    BufferedImage rasterize(Region region, FacetLayer layer, RenderEpoch renderEpoch) {
+
+        Vector3i extent = region.getRegion().size();
+        BufferedImage image = createTransparentImage(extent.x, extent.z);
+        OptionalInt uniform = (layer instanceof UniformLayer)
+                ? ((UniformLayer) layer).getUniformColor(region) : OptionalInt.empty();
+        if (uniform.isPresent()) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            Arrays.fill(pixels, uniform.getAsInt());
+        } else if (layer instanceof HaloLayer) {
+            HaloLayer haloLayer = (HaloLayer) layer;
+            Halo halo = createHalo(region, haloLayer.getHaloWidth(), renderEpoch);
+            try {
+                haloLayer.render(image, region, halo);
+            } finally {
+                halo.rendered();
+            }
+        } else {
+            layer.render(image, region);
+        }
+        return image;
+    }
+
+    private Halo createHalo(Region region, int width, RenderEpoch renderEpoch) {
+        int height = region.getRegion().sizeY();
+        Function<ImmutableVector2i, Region> neighbors = tile -> {
+            RegionBatch batch = regionCache.getIfPresent(tile);
+            boolean usable = batch != null && batch.getRegion().getRegion().sizeY() >= height;
+            return usable ? batch.getRegion() : null;
+        };
+        return haloService.createHalo(region, width, neighbors, renderEpoch.getWorld(), renderEpoch.getWorldVersion(),
+                strip -> new ThreadSafeRegion(strip, lockFreeFacets));
+    }
+
+    /**
+     * @param width the image width
+     * @param height the image height
+     * @return a new, fully transparent image
+     */
+    private static BufferedImage createTransparentImage(int width, int height) {
+        DirectColorModel colorModel = ColorModels.ARGB;
+
+        int[] masks = colorModel.getMasks();
+        DataBufferInt imageBuffer = new DataBufferInt(width * height);
+        WritableRaster raster = Raster.createPackedRaster(imageBuffer, width, height, width, masks, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Generates the region of a batch of tiles and puts it into the region cache. All facets that
+     * are rendered by the visible layers are computed, while all others are skipped.
+     * Facets that are present already (e.g. for previously visible layers) are kept.
+     * Regions are only a single block high, unless a visible layer renders a 3D facet.
+     */
+    private class GenerateRegion implements Callable<RegionBatch> {
+
+        private final ImmutableVector2i origin;
+        private final int size;
+        private final RenderEpoch renderEpoch;
+        private final int request;
+
+        /**
+         * @param origin the tile with the smallest coordinates
+         * @param size the batch size
+         * @param renderEpoch the epoch that defines the world and the layers
+         * @param request the initialization request of the world generator the task was created for
+         */
+        public GenerateRegion(ImmutableVector2i origin, int size, RenderEpoch renderEpoch, int request) {
+            this.origin = origin;
+            this.size = size;
+            this.renderEpoch = renderEpoch;
+            this.request = request;
+        }
+
+        @Override
+        public RegionBatch call() {
+            checkWorld();
+            if (memoryGuard.isCritical()) {
+                // the heap is almost exhausted - the tile is requested again later
+                throw new CancellationException("Not enough memory for " + this);
+            }
+            int height = getRegionHeight(renderEpoch);
+            List<ImmutableVector2i> tiles = RegionBatch.getTiles(origin, size);
+
+            boolean missing = false;
+            RegionBatch flatBatch = null;
+            Set<RegionBatch> existing = Sets.newIdentityHashSet();
+            for (ImmutableVector2i pos : tiles) {
+                RegionBatch batch = regionCache.getIfPresent(pos);
+                if (batch == null || batch.getRegion().getRegion().sizeY() < height) {
+                    // not generated yet or a 3D layer was enabled - the flat region must be replaced
+                    missing = true;
+                    if (batch != null && batch.getOrigin().equals(origin) && batch.getSize() == size) {
+                        flatBatch = batch;
+                    }
+                } else {
+                    existing.add(batch);
+                }
+            }
+
+            if (missing) {
+                ThreadSafeRegion region = createRegion(origin, size, renderEpoch.getWorld(), height);
+                if (flatBatch != null) {
+                    // 2D facets don't depend on the height of the region (e.g. after a preview)
+                    region.reuseFacets(flatBatch.getRegion(), get3DFacets(flatBatch.getRegion()));
+                }
+                RegionBatch batch = new RegionBatch(origin, size, region);
+                computeFacets(region);
+                batch.setInitRequest(request);
+                batch.updateBytes();
+                for (ImmutableVector2i pos : tiles) {
+                    regionCache.put(pos, batch);
+                }
+                return batch;
+            }
+
+            // all regions are available, but they might lack facets of newly enabled layers
+            for (RegionBatch batch : existing) {
+                // an aborted computation leaves the batch unverified
+                batch.setInitRequest(RegionBatch.UNVERIFIED);
+                computeFacets(batch.getRegion());
+                batch.setInitRequest(request);
+                // the batch has grown - it must be weighed again
+                batch.updateBytes();
+                for (ImmutableVector2i pos : batch.getTiles()) {
+                    if (regionCache.getIfPresent(pos) == batch) {
+                        regionCache.put(pos, batch);
+                    }
+                }
+            }
+            return existing.iterator().next();
+        }
+
+        private Set<Class<? extends WorldFacet>> get3DFacets(ThreadSafeRegion region) {
+            Set<Class<? extends WorldFacet>> result = Sets.newHashSet();
+            for (Class<? extends WorldFacet> facet : region.getFacets()) {
+                if (WorldFacet3D.class.isAssignableFrom(facet)) {
+                    result.add(facet);
+                }
+            }
+            return result;
+        }
+
+        private void computeFacets(ThreadSafeRegion region) {
+            for (Class<? extends WorldFacet> facet : renderEpoch.getRequiredFacets()) {
+                checkWorld();
+                region.getFacet(facet);
+            }
+            // the world has changed in the meantime - don't cache the region
+            checkWorld();
+        }
+
+        /**
+         * Cancelling the task does not stop the generation - only a change of the world does.
+         * The world changes as soon as the generator is re-initialized, long before the new epoch starts.
+         */
+        private void checkWorld() {
+            if (!renderEpoch.isSameWorld(epoch) || request != initRequest) {
+                throw new CancellationException("Outdated region task " + renderEpoch);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "GenerateRegion [" + origin + ", " + size + "x" + size + "]";
+        }
+    }
+
+    /**
+     * Composes a tile image using the layers of the given epoch.
+     */
+    private class RasterizeTile implements Callable<BufferedImage> {
 
         private final ImmutableVector2i pos;
+        private final RenderEpoch renderEpoch;
 
-        public UpdateImageCache(ImmutableVector2i pos) {
+        public RasterizeTile(ImmutableVector2i pos, RenderEpoch renderEpoch) {
             this.pos = pos;
+            this.renderEpoch = renderEpoch;
         }
 
         @Override
         public BufferedImage call() {
-            Region region = regionCache.getUnchecked(pos);
-            BufferedImage image;
-            image = rasterize(region);
-            return image;
+            checkEpoch(renderEpoch);
+            return composite(pos, renderEpoch);
         }
     }
 }
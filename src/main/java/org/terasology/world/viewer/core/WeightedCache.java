@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A thread-safe LRU cache that is limited by the total weight (usually the size in bytes)
+ * of its values rather than by the number of entries. In contrast to Guava caches,
+ * the budget can be changed at runtime - the least recently used entries are evicted
+ * until the cache fits into the new budget. The weight of a value is determined once when it is added.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class WeightedCache<K, V> {
+
+    private final String name;
+    private final ToLongFunction<? super V> weigher;
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private RemovalListener<? super K, ? super V> removalListener = (k, v, evicted) -> { };
+    private LongSupplier sharedWeight = () -> 0;
+
+    private long budget;
+    private long weight;
+    private long evictions;
+
+    /**
+     * @param name the name of the cache (for diagnostics)
+     * @param budget the maximum total weight
+     * @param weigher computes the weight of a value - it must not access other caches
+     */
+    WeightedCache(String name, long budget, ToLongFunction<? super V> weigher) {
+        this.name = name;
+        this.budget = budget;
+        this.weigher = weigher;
+    }
+
+    /**
+     * The listener is called while the cache is locked, so it must not access this cache.
+     * It is called for every value that leaves the cache, including replaced values and
+     * loaded values that lost a race against another thread. This also applies if the
+     * value is identical to the one that remains in the cache.
+     * @param listener the listener
+     */
+    public synchronized void setRemovalListener(RemovalListener<? super K, ? super V> listener) {
+        this.removalListener = listener;
+    }
+
+    /**
+     * Values that are shared between entries can be weighed as zero and accounted for separately.
+     * Their total weight counts against the budget, so it must drop when entries are evicted.
+     * It is queried while the cache is locked.
+     * @param sharedWeight the total weight of the shared values
+     */
+    public synchronized void setSharedWeight(LongSupplier sharedWeight) {
+        this.sharedWeight = sharedWeight;
+        evict();
+    }
+
+    /**
+     * Unlike {@link #getIfPresent(Object)}, this does not change the eviction order.
+     * @param key the key
+     * @return true if the key is present
+     */
+    public synchronized boolean contains(Object key) {
+        return map.containsKey(key);
+    }
+
+    public synchronized V getIfPresent(Object key) {
+        Entry<V> entry = map.get(key);
+        return (entry != null) ? entry.value : null;
+    }
+
+    /**
+     * The loader is called outside of the lock, so it can be called more than once
+     * for the same key if several threads ask for it at the same time. The first value wins.
+     * @param key the key
+     * @param loader creates the value if the key is not present
+     * @return the cached value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        V loaded = loader.apply(key);
+        synchronized (this) {
+            Entry<V> entry = map.get(key);
+            if (entry != null) {
+                removalListener.onRemoval(key, loaded, false);
+                return entry.value;
+            }
+            add(key, loaded);
+            return loaded;
+        }
+    }
+
+    public synchronized void put(K key, V value) {
+        add(key, value);
+    }
+
+    public synchronized void putAll(Map<? extends K, ? extends V> values) {
+        for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void add(K key, V value) {
+        Entry<V> entry = new Entry<>(value, weigher.applyAsLong(value));
+        Entry<V> prev = map.put(key, entry);
+        if (prev != null) {
+            weight -= prev.weight;
+            removalListener.onRemoval(key, prev.value, false);
+        }
+        weight += entry.weight;
+        evict();
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void invalidate(Object key) {
+        Entry<V> prev = map.remove(key);
+        if (prev != null) {
+            weight -= prev.weight;
+            removalListener.onRemoval((K) key, prev.value, false);
+        }
+    }
+
+    /**
+     * @param key the key
+     * @param value the expected value (compared by identity)
+     * @return true if the entry was removed
+     */
+    public synchronized boolean remove(K key, V value) {
+        Entry<V> entry = map.get(key);
+        if (entry != null && entry.value == value) {
+            map.remove(key);
+            weight -= entry.weight;
+            removalListener.onRemoval(key, value, false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param predicate the condition for the entries to remove
+     */
+    public synchronized void removeIf(Predicate<? super V> predicate) {
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            if (predicate.test(entry.getValue().value)) {
+                weight -= entry.getValue().weight;
+                it.remove();
+                removalListener.onRemoval(entry.getKey(), entry.getValue().value, false);
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+            removalListener.onRemoval(entry.getKey(), entry.getValue().value, false);
+        }
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return an immutable copy of all entries (in LRU order, does not count as access)
+     */
+    public synchronized Map<K, V> snapshot() {
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().value);
+        }
+        return builder.build();
+    }
+
+    public synchronized long size() {
+        return map.size();
+    }
+
+    /**
+     * @return the total weight of all entries, including the shared values
+     */
+    public synchronized long getWeight() {
+        return weight + sharedWeight.getAsLong();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Evicts entries immediately if the new budget is smaller than the current weight.
+     * @param newBudget the new maximum total weight
+     */
+    public synchronized void setBudget(long newBudget) {
+        this.budget = newBudget;
+        evict();
+    }
+
+    /**
+     * @return the total number of entries that were evicted to meet the budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (weight + sharedWeight.getAsLong() > budget && it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            weight -= eldest.getValue().weight;
+            it.remove();
+            evictions++;
+            removalListener.onRemoval(eldest.getKey(), eldest.getValue().value, true);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d entries, %d/%d MB", name, map.size(), getWeight() >> 20, budget >> 20);
+    }
+
+    /**
+     * Is notified when values leave the cache
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    @FunctionalInterface
+    interface RemovalListener<K, V> {
+
+        /**
+         * @param key the key
+         * @param value the removed value
+         * @param evicted true if the value was evicted to meet the budget
+         */
+        void onRemoval(K key, V value, boolean evicted);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
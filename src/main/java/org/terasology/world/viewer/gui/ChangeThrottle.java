@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.gui;
+
+import javax.swing.Timer;
+
+/**
+ * Coalesces bursts of change events (e.g. from a spinner whose arrow is held down) on the UI thread.
+ * The first change is applied immediately, further changes at most once per interval.
+ * The last change of a burst is always applied, so the action must read the current value itself.
+ */
+public class ChangeThrottle {
+
+    private final Runnable action;
+    private final Timer timer;
+
+    private boolean pending;
+
+    /**
+     * @param intervalMillis the minimum time between two actions in milliseconds
+     * @param action the action that applies the current value
+     */
+    public ChangeThrottle(int intervalMillis, Runnable action) {
+        this.action = action;
+        this.timer = new Timer(intervalMillis, e -> onTimer());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Must be called on the UI thread for every change event
+     */
+    public void changed() {
+        if (timer.isRunning()) {
+            pending = true;
+        } else {
+            action.run();
+            timer.start();
+        }
+    }
+
+    /**
+     * Discards a pending change, e.g. because the control is about to be replaced
+     */
+    public void cancel() {
+        timer.stop();
+        pending = false;
+    }
+
+    private void onTimer() {
+        if (pending) {
+            pending = false;
+            action.run();
+            timer.start();
+        }
+    }
+}
@@ -31,6 +31,8 @@ import com.google.common.math.IntMath;
  */
 public class GridOverlay extends AbstractOverlay implements WorldOverlay {
 
+    private static final BasicStroke STROKE = new BasicStroke(0);
+
     private Color originGridColor = new Color(192, 192, 192, 224);
     private Color majorGridColor = new Color(128, 128, 128, 160);
     private Color minorGridColor = new Color(128, 128, 128, 64);
@@ -53,7 +55,7 @@ public class GridOverlay extends AbstractOverlay implements WorldOverlay {
         int tileMaxX = IntMath.divide(area.maxX(), tileSizeX, RoundingMode.CEILING);
         int tileMaxZ = IntMath.divide(area.maxY(), tileSizeY, RoundingMode.CEILING);
 
-        g.setStroke(new BasicStroke(0));
+        g.setStroke(STROKE);
 
         for (int z = tileMinZ; z < tileMaxZ; z++) {
             g.setColor((z == 0) ? originGridColor : (z % majorToMinor == 0) ? majorGridColor : minorGridColor);
@@ -30,6 +30,8 @@ import org.terasology.math.geom.Rect2i;
  */
 public class PixelOverlay extends AbstractOverlay implements WorldOverlay {
 
+    private static final BasicStroke STROKE = new BasicStroke(0);
+
     private Color gridColor = new Color(96, 96, 96, 96);
     private float minScaleFactor;
 
@@ -48,7 +50,7 @@ public class PixelOverlay extends AbstractOverlay implements WorldOverlay {
         }
 
         g.setColor(gridColor);
-        g.setStroke(new BasicStroke(0));
+        g.setStroke(STROKE);
 
         for (int z = area.minY(); z < area.maxY(); z++) {
             g.drawLine(area.minX(), z, area.maxX(), z);
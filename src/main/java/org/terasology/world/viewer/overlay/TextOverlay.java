@@ -57,6 +57,19 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
     private Paint background;
     private Paint frame;
 
+    /**
+     * The layout of the last text - it is computed only when the text or the area change
+     */
+    private String layoutText;
+    private Rect2i layoutArea;
+    private String[] lines;
+    private int[] lineX;
+    private int[] lineY;
+    private int boxX;
+    private int boxY;
+    private int boxWidth;
+    private int boxHeight;
+
     /**
      * @param textSupp the text supplier
      */
@@ -70,6 +83,7 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
 
     public TextOverlay setVerticalAlign(VerticalAlign alignV) {
         this.alignVert = alignV;
+        invalidateLayout();
         return this;
     }
 
@@ -79,6 +93,7 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
 
     public TextOverlay setHorizontalAlign(HorizontalAlign alignH) {
         this.alignHorz = alignH;
+        invalidateLayout();
         return this;
     }
 
@@ -87,6 +102,7 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
         this.mgTop = top;
         this.mgRight = right;
         this.mgBottom = bottom;
+        invalidateLayout();
         return this;
     }
 
@@ -95,22 +111,18 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
         this.inTop = top;
         this.inRight = right;
         this.inBottom = bottom;
+        invalidateLayout();
         return this;
     }
 
     public void setFont(Font font) {
         this.font = font;
+        invalidateLayout();
     }
 
     @Override
     public void render(Graphics2D g, Rect2i area, ImmutableVector2i cursor) {
 
-        Rect2i mgArea = Rect2i.createFromMinAndMax(
-                area.minX() + mgLeft,
-                area.minY() + mgTop,
-                area.maxX() - mgRight,
-                area.maxY() - mgBottom);
-
         String text = textSupp.get();
         if (text == null) {
             return;
@@ -122,27 +134,51 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
         g.setFont(font);        // null fonts are silenty ignored
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
-        FontMetrics fm = g.getFontMetrics();
-        String[] lines = text.split("\n");
+        // the layout is reused as long as the text and the area remain the same
+        if (!text.equals(layoutText) || area != layoutArea) {
+            layout(g.getFontMetrics(), text, area);
+        }
+
+        if (background != null) {
+            g.setPaint(background);
+            g.fillRect(boxX, boxY, boxWidth, boxHeight);
+        }
 
-        if (background != null || frame != null) {
-            Vector2i bbox = getBBox(fm, lines);
-            bbox.addX(inLeft + inRight);
-            bbox.addY(inTop + inBottom);
-            int x = mgArea.minX() + alignHorz.getOffset(bbox.getX(), mgArea.width());
-            int y = mgArea.minY() + alignVert.getOffset(bbox.getY(), mgArea.height());
+        if (frame != null) {
+            g.setPaint(frame);
+            g.drawRect(boxX, boxY, boxWidth, boxHeight);
+        }
 
-            if (background != null) {
-                g.setPaint(background);
-                g.fillRect(x, y, bbox.getX(), bbox.getY());
-            }
+        g.setColor(color);
 
-            if (frame != null) {
-                g.setPaint(frame);
-                g.drawRect(x, y, bbox.getX(), bbox.getY());
-            }
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], lineX[i], lineY[i]);
         }
 
+        g.setFont(oldFont);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldHint);
+    }
+
+    private void layout(FontMetrics fm, String text, Rect2i area) {
+
+        Rect2i mgArea = Rect2i.createFromMinAndMax(
+                area.minX() + mgLeft,
+                area.minY() + mgTop,
+                area.maxX() - mgRight,
+                area.maxY() - mgBottom);
+
+        lines = text.split("\n");
+        lineX = new int[lines.length];
+        lineY = new int[lines.length];
+
+        Vector2i bbox = getBBox(fm, lines);
+        bbox.addX(inLeft + inRight);
+        bbox.addY(inTop + inBottom);
+        boxX = mgArea.minX() + alignHorz.getOffset(bbox.getX(), mgArea.width());
+        boxY = mgArea.minY() + alignVert.getOffset(bbox.getY(), mgArea.height());
+        boxWidth = bbox.getX();
+        boxHeight = bbox.getY();
+
         int y = 0;
 
         Rect2i textArea = Rect2i.createFromMinAndMax(
@@ -169,11 +205,9 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
             break;
         }
 
-        g.setColor(color);
-
-        for (String line : lines) {
+        for (int i = 0; i < lines.length; i++) {
             int x = 0;
-            int textWidth = fm.stringWidth(line);
+            int textWidth = fm.stringWidth(lines[i]);
 
             switch (alignHorz) {
             case LEFT:
@@ -190,13 +224,21 @@ public class TextOverlay extends AbstractOverlay implements ScreenOverlay {
                 break;
             }
 
-            g.drawString(line, x, y);
+            lineX[i] = x;
+            lineY[i] = y;
 
             y += fm.getHeight();
         }
 
-        g.setFont(oldFont);
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldHint);
+        layoutText = text;
+        layoutArea = area;
+    }
+
+    /**
+     * Forces a new layout in the next call to render()
+     */
+    private void invalidateLayout() {
+        layoutText = null;
     }
 
     public void setBackground(Paint background) {
@@ -17,6 +17,7 @@
 package org.terasology.world.viewer.overlay;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.util.function.Function;
@@ -29,8 +30,22 @@ import org.terasology.math.geom.Rect2i;
  */
 public class TooltipOverlay extends AbstractOverlay implements ScreenOverlay {
 
+    private static final Color BACKGROUND = new Color(64, 64, 64, 128);
+    private static final Color FRAME = new Color(192, 192, 192, 128);
+
     private Function<? super ImmutableVector2i, String> tooltipTextFunc;
 
+    /**
+     * The layout of the last text - it is computed only when the text changes
+     */
+    private String layoutText;
+    private Font layoutFont;
+    private String[] lines;
+    private int ascent;
+    private int lineHeight;
+    private int maxWidth;
+    private int maxHeight;
+
     public TooltipOverlay(Function<? super ImmutableVector2i, String> tooltipTextFunc) {
         this.tooltipTextFunc = tooltipTextFunc;
     }
@@ -47,37 +62,44 @@ public class TooltipOverlay extends AbstractOverlay implements ScreenOverlay {
         int offX = 5;
         int offY = 5;
 
-        String[] lines = text.split("\n");
-
-        g.setColor(Color.WHITE);
-        FontMetrics fm = g.getFontMetrics();
+        // the layout is reused as long as the text and the font remain the same
+        if (!text.equals(layoutText) || g.getFont() != layoutFont) {
+            layout(g.getFontMetrics(), text);
+            layoutFont = g.getFont();
+        }
 
         int x = wx + offX;
-        int y = wy + offY + fm.getAscent();
-
-        int maxHeight = lines.length * fm.getHeight();
-        int maxWidth = 0;
-        for (String line : lines) {
-            int width = fm.stringWidth(line);
-            if (width > maxWidth) {
-                maxWidth = width;
-            }
-        }
+        int y = wy + offY + ascent;
 
         int inset = 2;
-        g.setColor(new Color(64, 64, 64, 128));
+        g.setColor(BACKGROUND);
         g.fillRect(wx + offX - inset, wy + offY - inset, maxWidth + 2 * inset, maxHeight + 2 * inset);
 
-        g.setColor(new Color(192, 192, 192, 128));
+        g.setColor(FRAME);
         g.drawRect(wx + offX - inset, wy + offY - inset, maxWidth + 2 * inset, maxHeight + 2 * inset);
 
         g.setColor(Color.WHITE);
 
         for (String line : lines) {
             g.drawString(line, x, y);
-            y += fm.getHeight();
+            y += lineHeight;
         }
 
         g.dispose();
     }
+
+    private void layout(FontMetrics fm, String text) {
+        lines = text.split("\n");
+        ascent = fm.getAscent();
+        lineHeight = fm.getHeight();
+        maxHeight = lines.length * lineHeight;
+        maxWidth = 0;
+        for (String line : lines) {
+            int width = fm.stringWidth(line);
+            if (width > maxWidth) {
+                maxWidth = width;
+            }
+        }
+        layoutText = text;
+    }
 }
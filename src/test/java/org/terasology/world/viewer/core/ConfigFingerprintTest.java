@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.terasology.engine.SimpleUri;
+import org.terasology.entitySystem.Component;
+import org.terasology.world.generator.WorldConfigurator;
+import org.terasology.world.generator.WorldGenerator;
+
+/**
+ * Tests {@link ConfigFingerprint}.
+ */
+public class ConfigFingerprintTest {
+
+    @Test
+    public void testEqualConfigs() {
+        ConfigFingerprint first = ConfigFingerprint.of(createWorldGen("seed", 5, 7));
+        ConfigFingerprint second = ConfigFingerprint.of(createWorldGen("seed", 5, 7));
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void testDifferentSeed() {
+        assertNotEquals(ConfigFingerprint.of(createWorldGen("seed", 5, 7)), ConfigFingerprint.of(createWorldGen("other", 5, 7)));
+    }
+
+    @Test
+    public void testDifferentProperty() {
+        assertNotEquals(ConfigFingerprint.of(createWorldGen("seed", 5, 7)), ConfigFingerprint.of(createWorldGen("seed", 5, 8)));
+    }
+
+    @Test
+    public void testPropertyOrderIsIrrelevant() {
+        WorldGenerator forward = createWorldGen("seed", 5, 7);
+        WorldGenerator reverse = createWorldGen("seed", 5, 7);
+        Map<String, Component> reversed = new LinkedHashMap<>();
+        reversed.put("mountains", new TestComponent(7));
+        reversed.put("hills", new TestComponent(5));
+        Mockito.when(reverse.getConfigurator().getProperties()).thenReturn(reversed);
+
+        assertEquals(ConfigFingerprint.of(forward), ConfigFingerprint.of(reverse));
+    }
+
+    private static WorldGenerator createWorldGen(String seed, int hills, int mountains) {
+        Map<String, Component> props = new LinkedHashMap<>();
+        props.put("hills", new TestComponent(hills));
+        props.put("mountains", new TestComponent(mountains));
+
+        WorldConfigurator configurator = Mockito.mock(WorldConfigurator.class);
+        Mockito.when(configurator.getProperties()).thenReturn(props);
+
+        WorldGenerator worldGen = Mockito.mock(WorldGenerator.class);
+        Mockito.when(worldGen.getUri()).thenReturn(new SimpleUri("test:generator"));
+        Mockito.when(worldGen.getWorldSeed()).thenReturn(seed);
+        Mockito.when(worldGen.getConfigurator()).thenReturn(configurator);
+        return worldGen;
+    }
+
+    private static class TestComponent implements Component {
+        private final int height;
+
+        TestComponent(int height) {
+            this.height = height;
+        }
+    }
+}
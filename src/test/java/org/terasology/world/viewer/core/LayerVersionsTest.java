@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.terasology.world.viewer.layers.FacetLayer;
+import org.terasology.world.viewer.layers.FacetLayerConfig;
+
+/**
+ * Tests {@link LayerVersions}.
+ */
+public class LayerVersionsTest {
+
+    @Test
+    public void testVersionChangesWithConfig() {
+        TestConfig config = new TestConfig();
+        FacetLayer layer = createLayer(config);
+        LayerVersions versions = new LayerVersions();
+
+        assertTrue(versions.update(layer));
+        int initial = versions.snapshot().get(layer);
+
+        // visibility or order changes don't affect the config
+        assertFalse(versions.update(layer));
+        assertEquals(initial, (int) versions.snapshot().get(layer));
+
+        config.scale = 2;
+        assertTrue(versions.update(layer));
+        int changed = versions.snapshot().get(layer);
+        assertNotEquals(initial, changed);
+
+        // a restored config gets its previous version back
+        config.scale = 1;
+        assertTrue(versions.update(layer));
+        assertEquals(initial, (int) versions.snapshot().get(layer));
+    }
+
+    @Test
+    public void testLayersAreIndependent() {
+        FacetLayer first = createLayer(new TestConfig());
+        FacetLayer second = createLayer(new TestConfig());
+        LayerVersions versions = new LayerVersions();
+
+        versions.update(first);
+        versions.update(second);
+        assertNotEquals(versions.snapshot().get(first), versions.snapshot().get(second));
+    }
+
+    private static FacetLayer createLayer(FacetLayerConfig config) {
+        FacetLayer layer = Mockito.mock(FacetLayer.class);
+        Mockito.when(layer.getConfig()).thenReturn(config);
+        return layer;
+    }
+
+    private static class TestConfig implements FacetLayerConfig {
+        private int scale = 1;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link PackedTile} restores the original pixels for all encodings.
+ */
+public class PackedTileTest {
+
+    private static final int SIZE = 128;
+
+    @Test
+    public void testSingleColor() {
+        assertRoundTrip(createPixels(1), 100);
+    }
+
+    @Test
+    public void testNibblePalette() {
+        assertRoundTrip(createPixels(16), SIZE * SIZE / 2 + 200);
+    }
+
+    @Test
+    public void testBytePalette() {
+        assertRoundTrip(createPixels(256), SIZE * SIZE + 1200);
+    }
+
+    @Test
+    public void testDeflated() {
+        assertRoundTrip(createPixels(SIZE * SIZE / 4), SIZE * SIZE * 2);
+    }
+
+    @Test
+    public void testNoiseIsNotPacked() {
+        int[] pixels = new int[SIZE * SIZE];
+        Random random = new Random(1234);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        assertNull(PackedTile.pack(pixels));
+    }
+
+    private static void assertRoundTrip(int[] pixels, long maxBytes) {
+        PackedTile packed = PackedTile.pack(pixels);
+        assertNotNull(packed);
+        assertTrue("Packed into " + packed.getBytes() + " bytes", packed.getBytes() <= maxBytes);
+
+        int[] unpacked = new int[pixels.length];
+        packed.unpack(unpacked);
+        assertArrayEquals(pixels, unpacked);
+    }
+
+    /**
+     * @param colors the number of distinct colors
+     * @return horizontal runs of colors, similar to a rendered height map
+     */
+    private static int[] createPixels(int colors) {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            int index = (i / 4) % colors;
+            pixels[i] = 0xFF000000 | (index * 0x010203);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.terasology.math.geom.ImmutableVector2i;
+
+import com.google.common.collect.Lists;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Verifies that the per-tile lookups of the paint loop don't allocate in steady state.
+ */
+public class PaintAllocationTest {
+
+    private static final int TILE_SIZE = 128;
+    private static final int MAX_LEVEL = 3;
+    private static final int CACHE_SIZE = 1000;
+    private static final int FRAMES = 2000;
+
+    @Test
+    public void testTileLookupsDoNotAllocate() {
+        ThreadMXBean threads = getThreadBean();
+
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        // large enough for all tiles that are looked up - nothing is evicted
+        WeightedCache<ImmutableVector2i, BufferedImage> baseTiles = new WeightedCache<>("Tiles", CACHE_SIZE * 4, tile -> 1);
+        Function<ImmutableVector2i, BufferedImage> loader = pos -> image;
+        TilePyramid pyramid = new TilePyramid(TILE_SIZE, TILE_SIZE, MAX_LEVEL, CACHE_SIZE,
+                pos -> baseTiles.get(pos, loader), pos -> false);
+
+        // creates all keys and pyramid tiles and gives the JIT a chance to compile the loop
+        for (int i = 0; i < FRAMES; i++) {
+            paintFrame(pyramid);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            paintFrame(pyramid);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // a single key object per frame would already exceed this
+        assertTrue("Allocated " + allocated + " bytes in " + FRAMES + " frames", allocated < FRAMES);
+    }
+
+    @Test
+    public void testRevalidationDoesNotAllocate() {
+        ThreadMXBean threads = getThreadBean();
+
+        // all visible tiles and many more off-screen tiles are outdated
+        List<ImmutableVector2i> cached = Lists.newArrayList();
+        for (int z = -50; z < 50; z++) {
+            for (int x = -50; x < 50; x++) {
+                cached.add(new ImmutableVector2i(x, z));
+            }
+        }
+        StaleTiles staleTiles = new StaleTiles();
+        staleTiles.reset(cached);
+        RenderEpoch epoch = new RenderEpoch(1, 1, null, Collections.emptyList(), Collections.emptyMap());
+
+        // the first frame requests all visible tiles
+        assertEquals(9 * 16, revalidateFrame(staleTiles, epoch));
+        for (int i = 0; i < FRAMES; i++) {
+            revalidateFrame(staleTiles, epoch);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int requested = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            requested += revalidateFrame(staleTiles, epoch);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(0, requested);
+        assertTrue("Allocated " + allocated + " bytes in " + FRAMES + " frames", allocated < FRAMES);
+
+        // tiles are requested again for the next epoch or after their task was abandoned
+        staleTiles.retry(new ImmutableVector2i(0, 0));
+        assertEquals(1, revalidateFrame(staleTiles, epoch));
+        RenderEpoch next = new RenderEpoch(1, 2, null, Collections.emptyList(), Collections.emptyMap());
+        assertEquals(9 * 16, revalidateFrame(staleTiles, next));
+    }
+
+    private static ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof ThreadMXBean);
+        ThreadMXBean threads = (ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Checks all base tiles of a 1920x1080 window for outdated images, just like Viewer.revalidateTiles()
+     * @return the number of tiles that would have been scheduled
+     */
+    private static int revalidateFrame(StaleTiles staleTiles, RenderEpoch epoch) {
+        int requested = 0;
+        for (int z = -4; z < 5; z++) {
+            for (int x = -8; x < 8; x++) {
+                ImmutableVector2i pos = staleTiles.request(x, z, epoch);
+                if (pos != null) {
+                    // the same version object is used to check for scheduled region tasks
+                    if (epoch.getRegionTaskVersion(1) != epoch.getRegionTaskVersion(1)) {
+                        throw new IllegalStateException("Region task versions are not cached");
+                    }
+                    requested++;
+                }
+            }
+        }
+        return requested;
+    }
+
+    /**
+     * Looks up all tiles of a 1920x1080 window on the lower pyramid levels, just like Viewer.drawTiles()
+     */
+    private static void paintFrame(TilePyramid pyramid) {
+        for (int level = 0; level < MAX_LEVEL; level++) {
+            for (int z = -4; z < 5; z++) {
+                for (int x = -8; x < 8; x++) {
+                    if (pyramid.getTile(level, x, z) == null || pyramid.isStale(level, x, z)) {
+                        throw new IllegalStateException("Tile " + x + "/" + z + " is not available");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.ImmutableVector2i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.generation.Border3D;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.facets.SurfaceHeightFacet;
+
+/**
+ * Tests the tile borders of the {@link ShadedReliefLayer}.
+ */
+public class ShadedReliefLayerTest {
+
+    private static final int TILE_SIZE = 4;
+
+    @Test
+    public void testSlopeIsSeamless() {
+        int[] pixels = render((x, z) -> x * 0.5f);
+
+        // a constant slope has the same shade everywhere, including the border blocks
+        assertTrue(pixels[0] != 0);
+        for (int pixel : pixels) {
+            assertEquals(pixels[0], pixel);
+        }
+    }
+
+    @Test
+    public void testBorderReadsNeighbors() {
+        // a cliff right behind the eastern border of the tile
+        int[] pixels = render((x, z) -> (x < TILE_SIZE) ? 0 : 10);
+
+        for (int z = 0; z < TILE_SIZE; z++) {
+            int row = z * TILE_SIZE;
+            assertEquals(pixels[row], pixels[row + 1]);
+            assertEquals(pixels[row], pixels[row + 2]);
+            assertNotEquals(pixels[row], pixels[row + 3]);
+        }
+    }
+
+    private static int[] render(HeightFunction heights) {
+        Function<ImmutableVector2i, Region> tileRegions = tile -> createRegion(tile.getX(), tile.getY(), heights);
+        Region center = createRegion(0, 0, heights);
+        Halo halo = new Halo(center, 1, TILE_SIZE, TILE_SIZE, tileRegions, () -> { });
+
+        BufferedImage img = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        new ShadedReliefLayer().render(img, center, halo);
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    private static Region createRegion(int tileX, int tileY, HeightFunction heights) {
+        Vector3i min = new Vector3i(tileX * TILE_SIZE, 0, tileY * TILE_SIZE);
+        Vector3i max = new Vector3i(tileX * TILE_SIZE + TILE_SIZE - 1, 0, tileY * TILE_SIZE + TILE_SIZE - 1);
+        Region3i area = Region3i.createFromMinMax(min, max);
+        SurfaceHeightFacet facet = new SurfaceHeightFacet(area, new Border3D(0, 0, 0)) {
+            @Override
+            public float getWorld(int x, int z) {
+                return heights.getHeight(x, z);
+            }
+        };
+
+        Region region = Mockito.mock(Region.class);
+        Mockito.when(region.getRegion()).thenReturn(area);
+        Mockito.when(region.getFacet(SurfaceHeightFacet.class)).thenReturn(facet);
+        return region;
+    }
+
+    private interface HeightFunction {
+        float getHeight(int x, int z);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TileIndex}.
+ */
+public class TileIndexTest {
+
+    @Test
+    public void testIndexAfterRemoval() {
+        TileIndex<String> index = new TileIndex<>(4);
+        for (int x = -20; x < 20; x++) {
+            for (int y = -20; y < 20; y++) {
+                index.put(TileKeys.pack(x, y), x + "/" + y);
+            }
+        }
+        for (int x = -20; x < 20; x += 2) {
+            for (int y = -20; y < 20; y++) {
+                assertEquals(x + "/" + y, index.remove(TileKeys.pack(x, y)));
+            }
+        }
+
+        assertEquals(20 * 40, index.size());
+        for (int x = -20; x < 20; x++) {
+            for (int y = -20; y < 20; y++) {
+                String expected = (x % 2 == 0) ? null : x + "/" + y;
+                assertEquals(expected, index.get(TileKeys.pack(x, y)));
+            }
+        }
+
+        index.clear();
+        assertNull(index.get(TileKeys.pack(1, 1)));
+    }
+
+    @Test
+    public void testReplaceAndGrow() {
+        TileIndex<String> index = new TileIndex<>(0);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(index.put(TileKeys.pack(i, -i), "a" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("a" + i, index.put(TileKeys.pack(i, -i), "b" + i));
+        }
+        assertEquals(1000, index.size());
+        assertEquals("b500", index.get(TileKeys.pack(500, -500)));
+        assertNull(index.get(TileKeys.pack(-500, 500)));
+    }
+}
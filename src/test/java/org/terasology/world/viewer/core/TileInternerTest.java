@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.math.geom.ImmutableVector2i;
+
+/**
+ * Tests the reference counting of shared tile images in a {@link WeightedCache}.
+ */
+public class TileInternerTest {
+
+    private static final int TILE_SIZE = 16;
+    private static final long TILE_BYTES = SizeEstimator.estimate(createTile(0));
+
+    private TileInterner interner;
+    private WeightedCache<ImmutableVector2i, BufferedImage> cache;
+
+    @Before
+    public void setup() {
+        interner = new TileInterner();
+        cache = new WeightedCache<>("Tiles", 3 * TILE_BYTES, image -> interner.getReferences(image) > 0 ? 0 : TILE_BYTES);
+        cache.setRemovalListener((pos, image, evicted) -> interner.release(image));
+        cache.setSharedWeight(interner::getBytes);
+    }
+
+    @Test
+    public void testRepublishSamePixels() {
+        ImmutableVector2i pos = new ImmutableVector2i(1, 2);
+        BufferedImage first = interner.intern(createTile(0xFF0000FF));
+        cache.put(pos, first);
+
+        BufferedImage second = interner.intern(createTile(0xFF0000FF));
+        assertSame(first, second);
+        cache.put(pos, second);
+        assertEquals(1, interner.getReferences(first));
+
+        cache.invalidate(pos);
+        assertEquals(0, interner.getReferences(first));
+        assertEquals(0, interner.getBytes());
+    }
+
+    @Test
+    public void testSharedImageIsChargedUntilReleased() {
+        ImmutableVector2i a = new ImmutableVector2i(0, 0);
+        ImmutableVector2i b = new ImmutableVector2i(1, 0);
+        BufferedImage shared = interner.intern(createTile(0xFF00FF00));
+        cache.put(a, shared);
+        cache.put(b, interner.intern(createTile(0xFF00FF00)));
+        assertEquals(TILE_BYTES, cache.getWeight());
+
+        // the first owner leaves - the image is still held by the other tile
+        cache.invalidate(a);
+        assertEquals(1, interner.getReferences(shared));
+        assertEquals(TILE_BYTES, cache.getWeight());
+
+        cache.invalidate(b);
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testEvictionReleasesSharedImages() {
+        for (int i = 0; i < 4; i++) {
+            cache.put(new ImmutableVector2i(i, 0), interner.intern(createTile(i)));
+        }
+        assertEquals(3, cache.size());
+        assertEquals(3 * TILE_BYTES, cache.getWeight());
+        assertEquals(3 * TILE_BYTES, interner.getBytes());
+    }
+
+    private static BufferedImage createTile(int argb) {
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < TILE_SIZE; y++) {
+            for (int x = 0; x < TILE_SIZE; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+}
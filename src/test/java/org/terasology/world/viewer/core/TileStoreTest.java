@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.math.geom.ImmutableVector2i;
+
+/**
+ * Tests {@link TileStore} with direct buffers.
+ */
+public class TileStoreTest {
+
+    private static final int SIZE = 16;
+
+    private static final ImmutableVector2i A = new ImmutableVector2i(0, 0);
+    private static final ImmutableVector2i B = new ImmutableVector2i(1, 0);
+    private static final ImmutableVector2i C = new ImmutableVector2i(2, 0);
+
+    private TileStore store;
+
+    @Before
+    public void setup() throws IOException {
+        store = new TileStore(SIZE, SIZE, 2, false);
+    }
+
+    @After
+    public void teardown() {
+        store.close();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        store.put(A, createPixels(0xFF112233));
+        assertArrayEquals(createPixels(0xFF112233), getPixels(A));
+        assertNull(store.get(B, TileStoreTest::createImage));
+
+        // overwriting keeps the slot
+        store.put(A, createPixels(0xFF445566));
+        assertArrayEquals(createPixels(0xFF445566), getPixels(A));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testReleasedSlotIsReused() {
+        store.put(A, createPixels(1));
+        store.put(B, createPixels(2));
+        store.remove(A);
+        store.put(C, createPixels(3));
+
+        // nothing had to be dropped
+        assertTrue(store.contains(B));
+        assertTrue(store.contains(C));
+        assertArrayEquals(createPixels(2), getPixels(B));
+        assertArrayEquals(createPixels(3), getPixels(C));
+    }
+
+    @Test
+    public void testDropsLeastRecentlyUsed() {
+        store.put(A, createPixels(1));
+        store.put(B, createPixels(2));
+        // A becomes the most recently used tile
+        getPixels(A);
+        store.put(C, createPixels(3));
+
+        assertFalse(store.contains(B));
+        assertArrayEquals(createPixels(1), getPixels(A));
+        assertArrayEquals(createPixels(3), getPixels(C));
+        assertEquals(2, store.size());
+    }
+
+    private int[] getPixels(ImmutableVector2i pos) {
+        BufferedImage image = store.get(pos, TileStoreTest::createImage);
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static BufferedImage createImage() {
+        return new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static int[] createPixels(int argb) {
+        int[] pixels = new int[SIZE * SIZE];
+        Arrays.fill(pixels, argb);
+        return pixels;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"){ }
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.world.viewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link WeightedCache}.
+ */
+public class WeightedCacheTest {
+
+    private WeightedCache<String, Integer> cache;
+    private List<String> evicted;
+    private List<String> removed;
+
+    @Before
+    public void setup() {
+        // every value weighs as much as its number
+        cache = new WeightedCache<>("Test", 10, value -> value);
+        evicted = Lists.newArrayList();
+        removed = Lists.newArrayList();
+        cache.setRemovalListener((key, value, wasEvicted) -> (wasEvicted ? evicted : removed).add(key));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        cache.put("a", 3);
+        cache.put("b", 3);
+        cache.put("c", 3);
+        // "a" becomes the most recently used entry
+        assertEquals(Integer.valueOf(3), cache.getIfPresent("a"));
+
+        cache.put("d", 3);
+        assertEquals(Lists.newArrayList("b"), evicted);
+        assertNull(cache.getIfPresent("b"));
+        assertEquals(9, cache.getWeight());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testReplaceUpdatesWeight() {
+        cache.put("a", 2);
+        cache.put("a", 7);
+        assertEquals(7, cache.getWeight());
+        assertEquals(1, cache.size());
+        assertEquals(Lists.newArrayList("a"), removed);
+        assertEquals(0, evicted.size());
+    }
+
+    @Test
+    public void testBudgetChange() {
+        cache.put("a", 4);
+        cache.put("b", 4);
+        cache.setBudget(5);
+        assertEquals(Lists.newArrayList("a"), evicted);
+        assertEquals(4, cache.getWeight());
+
+        // a larger budget does not bring back evicted entries, but allows more entries
+        cache.setBudget(20);
+        cache.put("c", 8);
+        cache.put("d", 8);
+        assertEquals(3, cache.size());
+        assertEquals(20, cache.getWeight());
+    }
+
+    @Test
+    public void testLoaderLosesRace() {
+        cache.put("a", 1);
+        assertEquals(Integer.valueOf(1), cache.get("a", key -> 2));
+        assertEquals(Integer.valueOf(5), cache.get("b", key -> 5));
+        assertEquals(6, cache.getWeight());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.invalidate("a");
+        assertEquals(2, cache.getWeight());
+        cache.invalidateAll();
+        assertEquals(0, cache.getWeight());
+        assertEquals(Lists.newArrayList("a", "b"), removed);
+        assertEquals(0, evicted.size());
+    }
+}